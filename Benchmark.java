@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The Benchmark class times loading and querying a synthetic social graph written by GraphGenerator. Each case runs
+ * a few warmup iterations so the JIT has compiled it, then a number of measured ones, and reports the mean and the
+ * fastest time per iteration. Results are folded into a volatile field so the JIT cannot drop the work as dead code.
+ *
+ * The same model, size and seed always give the same file, queries and results, so runs on different commits or
+ * machines measure the same work. The whole-graph analytics are quadratic or worse and are skipped above
+ * ANALYTICS_LIMIT accounts
+ */
+
+public class Benchmark{
+
+    protected static final int ANALYTICS_LIMIT = 20000;
+    protected static final int QUERIES = 1000;
+
+    //results of every iteration end up here
+    protected static volatile long sink;
+
+    protected final String fileName;
+    protected final int warmup;
+    protected final int iterations;
+    protected final int threads;
+    protected SocialGraph graph;
+    protected long[] ids;
+    //query pairs, drawn once so every case and iteration sees the same ones
+    protected long[] from;
+    protected long[] to;
+
+    /**
+     * the Benchmark constructor takes the records file to measure
+     * @param fileName of the records file
+     * @param warmup iterations per case
+     * @param iterations measured per case
+     * @param threads for the parallel loader
+     */
+    public Benchmark(String fileName, int warmup, int iterations, int threads){
+	this.fileName = fileName;
+	this.warmup = warmup;
+	this.iterations = iterations;
+	this.threads = threads;
+    }
+
+    /**
+     * The Case class is one thing to time. run returns something that depends on all the work it did
+     */
+    protected static abstract class Case{
+
+	protected final String name;
+
+	protected Case(String name){
+	    this.name = name;
+	}
+
+	protected abstract long run() throws Exception;
+    }
+
+    /**
+     * measure runs a case and prints its times
+     * @param test case to run
+     * @throws Exception if the case fails
+     */
+    protected void measure(Case test) throws Exception{
+	for(int i = 0; i < warmup; i++){
+	    sink += test.run();
+	}
+	long total = 0;
+	long best = Long.MAX_VALUE;
+	for(int i = 0; i < iterations; i++){
+	    long start = System.nanoTime();
+	    sink += test.run();
+	    long time = System.nanoTime() - start;
+	    total += time;
+	    best = Math.min(best, time);
+	}
+	System.out.printf("%-28s %12.3f ms/op %12.3f ms best%n", test.name, total / 1e6 / iterations, best / 1e6);
+    }
+
+    /**
+     * cases returns every case for the loaded graph
+     * @return list of cases
+     */
+    protected ArrayList<Case> cases(){
+	ArrayList<Case> cases = new ArrayList<Case>();
+	cases.add(new Case("load sequential"){
+		protected long run(){
+		    return new SocialGraph(fileName).getIDs().length;
+		}
+	    });
+	cases.add(new Case("load parallel x" + threads){
+		protected long run() throws IOException{
+		    return SocialGraph.load(fileName, threads).getIDs().length;
+		}
+	    });
+	cases.add(new Case("getFollows all"){
+		protected long run(){
+		    long result = 0;
+		    for(long id : ids){
+			result += graph.getFollows(id).length;
+		    }
+		    return result;
+		}
+	    });
+	cases.add(new Case("getFollowers all"){
+		protected long run(){
+		    long result = 0;
+		    for(long id : ids){
+			result += graph.getFollowers(id).length;
+		    }
+		    return result;
+		}
+	    });
+	cases.add(new Case("getLikes x" + QUERIES){
+		protected long run(){
+		    long result = 0;
+		    for(int i = 0; i < QUERIES; i++){
+			result += (long) graph.getLikes(from[i], to[i]);
+		    }
+		    return result;
+		}
+	    });
+	cases.add(new Case("getShortestPath x" + QUERIES / 10){
+		protected long run(){
+		    long result = 0;
+		    for(int i = 0; i < QUERIES / 10; i++){
+			ArrayList<Edge<String>> path = graph.getShortestPath(graph.getVertex(from[i]),
+									 graph.getVertex(to[i]));
+			//null when there is no path
+			result += path == null ? -1 : path.size();
+		    }
+		    return result;
+		}
+	    });
+	cases.add(new Case("getMinSpanningTree"){
+		protected long run(){
+		    return graph.getMinSpanningTree().size();
+		}
+	    });
+	if(ids.length <= ANALYTICS_LIMIT){
+	    cases.add(new Case("graphDiameter"){
+		    protected long run(){
+			return graph.graphDiameter();
+		    }
+		});
+	    cases.add(new Case("betweennessCentralityAll"){
+		    protected long run(){
+			return graph.betweennessCentralityAll().size();
+		    }
+		});
+	}
+	return cases;
+    }
+
+    /**
+     * run loads the graph, draws the queries and times every case
+     * @throws Exception if a case fails
+     */
+    public void run() throws Exception{
+	graph = SocialGraph.load(fileName, threads);
+	ids = graph.getIDs();
+	Random random = new Random(ids.length);
+	from = new long[QUERIES];
+	to = new long[QUERIES];
+	for(int i = 0; i < QUERIES; i++){
+	    from[i] = ids[random.nextInt(ids.length)];
+	    long[] follows = graph.getFollows(from[i]);
+	    //half the like queries hit an edge, the rest are pairs picked at random
+	    if(follows.length > 0 && random.nextBoolean()){
+		to[i] = follows[random.nextInt(follows.length)];
+	    }
+	    else{
+		to[i] = ids[random.nextInt(ids.length)];
+	    }
+	}
+	System.out.println(fileName + ": " + ids.length + " accounts");
+	for(Case test : cases()){
+	    measure(test);
+	}
+    }
+
+    public static void main(String[] args) throws Exception{
+	if(args.length < 3){
+	    System.out.println("usage: java Benchmark rmat <scale> <edges> [warmup] [iterations] [threads]");
+	    System.out.println("       java Benchmark pa <accounts> <follows per account> [warmup] [iterations] [threads]");
+	    System.out.println("       java Benchmark file <records file> - [warmup] [iterations] [threads]");
+	    return;
+	}
+	int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+	int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+	int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+	String fileName;
+	if(args[0].equals("file")){
+	    fileName = args[1];
+	}
+	else{
+	    //generated files are cached in the temp directory under their parameters
+	    fileName = System.getProperty("java.io.tmpdir") + File.separator + "socialGraph-" + args[0] + "-" + args[1] +
+		"-" + args[2] + ".txt";
+	    if(!new File(fileName).exists()){
+		GraphGenerator generator = args[0].equals("rmat")
+		    ? GraphGenerator.rmat(Integer.parseInt(args[1]), Long.parseLong(args[2]), 1)
+		    : GraphGenerator.preferentialAttachment(Integer.parseInt(args[1]), Integer.parseInt(args[2]), 1);
+		//written under another name first so an interrupted run does not leave half a file in the cache
+		File partial = new File(fileName + ".tmp");
+		generator.write(partial.getPath());
+		Files.move(partial.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING,
+			   StandardCopyOption.ATOMIC_MOVE);
+	    }
+	}
+	new Benchmark(fileName, warmup, iterations, threads).run();
+    }
+
+}
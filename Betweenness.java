@@ -0,0 +1,397 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The Betweenness class computes betweenness centrality for every vertex of a graph snapshot at once using Brandes'
+ * algorithm: one shortest path search per source builds the shortest path DAG and counts paths (sigma), then a
+ * single pass over the vertices in reverse order of distance accumulates how many of those shortest paths go
+ * through each vertex. That is O(VE) unweighted and O(VE + V^2 log V) weighted instead of enumerating paths.
+ *
+ * The scores use the same normalization as Graph.betweennessCentrality: the number of shortest paths (over all
+ * ordered pairs) that pass through a vertex divided by the total number of shortest paths. Weights are assumed to
+ * be positive.
+ *
+ * For graphs too big for the exact pass the approximate methods sample source vertices, run the same search from
+ * each sample in parallel on a ForkJoinPool and estimate the standard normalized betweenness
+ * b(v) = sum over s != v != t of sigma_st(v) / sigma_st, divided by (n - 1)(n - 2), together with an error bound
+ * that holds for every vertex at once with a given confidence
+ */
+
+public class Betweenness<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+    protected final boolean weighted;
+
+    /**
+     * the Betweenness constructor takes the snapshot to run against
+     * @param snapshot of the graph
+     * @param weighted true to use edge weights as path costs, false to count hops
+     */
+    public Betweenness(GraphSnapshot<T> snapshot, boolean weighted){
+	this.snapshot = snapshot;
+	this.weighted = weighted;
+    }
+
+    /**
+     * exact returns the betweenness centrality of every vertex
+     * @return scores indexed by dense index
+     */
+    public float[] exact(){
+	int n = snapshot.size();
+	Search search = new Search();
+	double[] through = new double[n];
+	double total = 0;
+	for(int source = 0; source < n; source++){
+	    total += search.run(source);
+	    search.accumulate(through, null);
+	}
+	float[] scores = new float[n];
+	for(int v = 0; v < n; v++){
+	    scores[v] = (float) (through[v] / total);
+	}
+	return scores;
+    }
+
+    /**
+     * approximate estimates the normalized betweenness of every vertex to within epsilon of the true value for all
+     * vertices simultaneously with probability at least 1 - delta. The number of samples comes from Hoeffding's
+     * inequality with a union bound over the vertices
+     * @param epsilon largest allowed absolute error
+     * @param delta allowed probability of exceeding epsilon
+     * @param seed for choosing the sampled sources
+     * @return estimate of every score with its error bound
+     */
+    public Estimate approximate(double epsilon, double delta, long seed){
+	int n = snapshot.size();
+	double scale = n > 1 ? (n - 1) / (double) n : 1;
+	int samples = (int) Math.ceil(Math.log(2.0 * Math.max(n, 1) / delta) / (2 * epsilon * scale * epsilon * scale));
+	Sampler sampler = new Sampler(seed);
+	sampler.sample(samples, ForkJoinPool.commonPool());
+	return sampler.estimate(delta);
+    }
+
+    /**
+     * approximate estimates the normalized betweenness of every vertex by sampling sources until a time budget runs
+     * out. The error bound of the result is whatever the samples that fit in the budget achieve
+     * @param millis time budget in milliseconds
+     * @param delta allowed probability of exceeding the reported error bound
+     * @param seed for choosing the sampled sources
+     * @return estimate of every score with its error bound
+     */
+    public Estimate approximate(long millis, double delta, long seed){
+	long deadline = System.nanoTime() + millis * 1000000L;
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+	Sampler sampler = new Sampler(seed);
+	int batch = pool.getParallelism() * 4;
+	do{
+	    sampler.sample(batch, pool);
+	}
+	while(System.nanoTime() < deadline && snapshot.size() > 0);
+	return sampler.estimate(delta);
+    }
+
+    /**
+     * The Estimate class holds sampled betweenness scores and the error bound they come with
+     */
+    public static class Estimate{
+
+	protected final GraphSnapshot<?> snapshot;
+	protected final float[] scores;
+	protected final double error;
+	protected final double confidence;
+	protected final int samples;
+
+	protected Estimate(GraphSnapshot<?> snapshot, float[] scores, double error, double confidence, int samples){
+	    this.snapshot = snapshot;
+	    this.scores = scores;
+	    this.error = error;
+	    this.confidence = confidence;
+	    this.samples = samples;
+	}
+
+	/**
+	 * getScores returns the estimated normalized betweenness of every vertex
+	 * @return scores indexed by dense index of the snapshot
+	 */
+	public float[] getScores(){
+	    return scores;
+	}
+
+	/**
+	 * scoreOf returns the estimated normalized betweenness of a vertex
+	 * @param id of the vertex
+	 * @return score, or NaN if the id is not in the graph
+	 */
+	public float scoreOf(long id){
+	    int index = snapshot.indexOf(id);
+	    if(index < 0){
+		return Float.NaN;
+	    }
+	    return scores[index];
+	}
+
+	/**
+	 * getError returns how far any score may be from the true value
+	 * @return error bound
+	 */
+	public double getError(){
+	    return error;
+	}
+
+	/**
+	 * getConfidence returns the probability with which every score is within the error bound
+	 * @return confidence
+	 */
+	public double getConfidence(){
+	    return confidence;
+	}
+
+	/**
+	 * getSamples returns the number of sampled sources
+	 * @return samples
+	 */
+	public int getSamples(){
+	    return samples;
+	}
+    }
+
+    /**
+     * The Sampler class draws source vertices and sums their dependencies over a ForkJoinPool
+     */
+    protected class Sampler{
+
+	protected final SplittableRandom random;
+	protected final double[] dependency;
+	protected int samples;
+
+	protected Sampler(long seed){
+	    random = new SplittableRandom(seed);
+	    dependency = new double[snapshot.size()];
+	    samples = 0;
+	}
+
+	/**
+	 * sample runs a number of uniformly drawn sources in parallel and adds their dependencies to the totals
+	 * @param count number of sources
+	 * @param pool to run them on
+	 */
+	protected void sample(int count, ForkJoinPool pool){
+	    int n = snapshot.size();
+	    if(n == 0){
+		return;
+	    }
+	    int[] sources = new int[count];
+	    for(int i = 0; i < count; i++){
+		sources[i] = random.nextInt(n);
+	    }
+	    //give every worker a few leaves, each leaf reuses one Search for all of its sources
+	    int leaf = Math.max(1, count / (pool.getParallelism() * 4));
+	    double[] sums = pool.invoke(new SampleTask(sources, 0, count, leaf));
+	    for(int v = 0; v < n; v++){
+		dependency[v] += sums[v];
+	    }
+	    samples += count;
+	}
+
+	/**
+	 * estimate scales the dependency totals into normalized betweenness estimates
+	 * @param delta allowed failure probability
+	 * @return estimate
+	 */
+	protected Estimate estimate(double delta){
+	    int n = snapshot.size();
+	    float[] scores = new float[n];
+	    double error = 0;
+	    if(n > 2 && samples > 0){
+		//each sample contributes dependency / (n - 2), a value in [0, 1] whose mean is b(v) (n - 1) / n
+		double scale = n / (double) (n - 1);
+		for(int v = 0; v < n; v++){
+		    scores[v] = (float) (dependency[v] / (n - 2) / samples * scale);
+		}
+		error = Math.sqrt(Math.log(2.0 * n / delta) / (2.0 * samples)) * scale;
+	    }
+	    return new Estimate(snapshot, scores, error, 1 - delta, samples);
+	}
+    }
+
+    /**
+     * The SampleTask class splits a range of sampled sources in half until it is small enough to run with its own
+     * Search, then sums the dependencies of its sources
+     */
+    protected class SampleTask extends RecursiveTask<double[]>{
+
+	protected final int[] sources;
+	protected final int from;
+	protected final int to;
+	protected final int leaf;
+
+	protected SampleTask(int[] sources, int from, int to, int leaf){
+	    this.sources = sources;
+	    this.from = from;
+	    this.to = to;
+	    this.leaf = leaf;
+	}
+
+	protected double[] compute(){
+	    if(to - from <= leaf){
+		double[] sums = new double[snapshot.size()];
+		Search search = new Search();
+		for(int i = from; i < to; i++){
+		    search.run(sources[i]);
+		    search.accumulate(null, sums);
+		}
+		return sums;
+	    }
+	    int mid = (from + to) >>> 1;
+	    SampleTask left = new SampleTask(sources, from, mid, leaf);
+	    left.fork();
+	    double[] sums = new SampleTask(sources, mid, to, leaf).compute();
+	    double[] other = left.join();
+	    for(int v = 0; v < sums.length; v++){
+		sums[v] += other[v];
+	    }
+	    return sums;
+	}
+    }
+
+    /**
+     * The Search class holds the per-source state of one Brandes pass. Only the entries reached by the last run
+     * are reset before the next one
+     */
+    protected class Search{
+
+	protected final double[] dist;
+	//number of shortest paths from the source to each vertex
+	protected final double[] sigma;
+	//number of shortest path DAG paths from each vertex to any vertex below it
+	protected final double[] below;
+	//Brandes' dependency of the source on each vertex
+	protected final double[] delta;
+	//vertices in the order they were settled, which doubles as the BFS queue
+	protected final int[] order;
+	protected int orderSize;
+	protected final IndexedMinHeap heap;
+
+	protected Search(){
+	    int n = snapshot.size();
+	    dist = new double[n];
+	    sigma = new double[n];
+	    below = new double[n];
+	    delta = new double[n];
+	    order = new int[n];
+	    Arrays.fill(dist, Double.POSITIVE_INFINITY);
+	    orderSize = 0;
+	    if(weighted){
+		heap = new IndexedMinHeap(n);
+	    }
+	    else{
+		heap = null;
+	    }
+	}
+
+	/**
+	 * run finds the shortest path DAG from a source
+	 * @param source dense index
+	 * @return the number of shortest paths from the source to every other vertex
+	 */
+	protected double run(int source){
+	    for(int i = 0; i < orderSize; i++){
+		int v = order[i];
+		dist[v] = Double.POSITIVE_INFINITY;
+		sigma[v] = 0;
+		below[v] = 0;
+		delta[v] = 0;
+	    }
+	    orderSize = 0;
+	    dist[source] = 0;
+	    sigma[source] = 1;
+	    if(weighted){
+		heap.insert(source, 0);
+		while(!heap.isEmpty()){
+		    int v = heap.poll();
+		    order[orderSize] = v;
+		    orderSize++;
+		    relax(v);
+		}
+	    }
+	    else{
+		order[0] = source;
+		orderSize = 1;
+		for(int head = 0; head < orderSize; head++){
+		    relax(order[head]);
+		}
+	    }
+	    double paths = 0;
+	    for(int i = 1; i < orderSize; i++){
+		paths += sigma[order[i]];
+	    }
+	    return paths;
+	}
+
+	/**
+	 * relax looks at every outgoing edge of a settled vertex and updates the distance and path count of the sink
+	 * @param v settled dense index
+	 */
+	protected void relax(int v){
+	    int[] targets = snapshot.outTargets;
+	    float[] weights = snapshot.outWeights;
+	    int end = snapshot.outOffsets[v + 1];
+	    for(int slot = snapshot.outOffsets[v]; slot < end; slot++){
+		int w = targets[slot];
+		double cost = dist[v] + (weighted ? weights[slot] : 1);
+		if(dist[w] == Double.POSITIVE_INFINITY){
+		    dist[w] = cost;
+		    sigma[w] = sigma[v];
+		    if(weighted){
+			heap.insert(w, cost);
+		    }
+		    else{
+			order[orderSize] = w;
+			orderSize++;
+		    }
+		}
+		else if(cost < dist[w]){
+		    //only possible when weighted, a vertex still in the heap found a cheaper route
+		    dist[w] = cost;
+		    sigma[w] = sigma[v];
+		    heap.decreaseKey(w, cost);
+		}
+		else if(cost == dist[w]){
+		    sigma[w] += sigma[v];
+		}
+	    }
+	}
+
+	/**
+	 * accumulate walks the vertices of the last run from farthest to nearest. It counts the DAG paths hanging
+	 * below each one to add the number of shortest paths through it to through, and accumulates Brandes'
+	 * dependency delta(v) = sum over DAG children w of sigma(v) / sigma(w) (1 + delta(w)) into dependency
+	 * @param through running path totals indexed by dense index, or null
+	 * @param dependency running dependency totals indexed by dense index, or null
+	 */
+	protected void accumulate(double[] through, double[] dependency){
+	    int[] targets = snapshot.outTargets;
+	    float[] weights = snapshot.outWeights;
+	    for(int i = orderSize - 1; i > 0; i--){
+		int v = order[i];
+		int end = snapshot.outOffsets[v + 1];
+		for(int slot = snapshot.outOffsets[v]; slot < end; slot++){
+		    int w = targets[slot];
+		    if(dist[w] == dist[v] + (weighted ? weights[slot] : 1)){
+			below[v] += 1 + below[w];
+			delta[v] += sigma[v] / sigma[w] * (1 + delta[w]);
+		    }
+		}
+		if(through != null){
+		    through[v] += sigma[v] * below[v];
+		}
+		if(dependency != null){
+		    dependency[v] += delta[v];
+		}
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,377 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The BitsetBFS class answers hop distance and reachability queries on a graph snapshot with a direction optimizing
+ * breadth first search (Beamer et al.). The frontier and the visited set are bitsets of longs, one bit per dense
+ * index. Small frontiers are expanded top-down along outgoing edges; once the edges leaving the frontier outnumber
+ * a fraction of the edges still unexplored, every unvisited vertex instead looks through its incoming edges for a
+ * parent in the frontier (bottom-up) and stops at the first one it finds. Social graphs have a small diameter and
+ * a huge middle frontier, which is where bottom-up saves most of the edge checks. Each level is split into ranges
+ * of bitset words that are expanded in parallel on a ForkJoinPool.
+ *
+ * Each thread keeps its search arrays between queries. While the frontier has fewer edges than there are bitset
+ * words the search runs top-down from a plain queue on the calling thread, and the next query only resets the
+ * vertices in that queue, so a query that stays near its source costs what it reaches rather than the size of the
+ * graph. Once the search moves to the bitset steps it stays there, and the next query clears the arrays in full,
+ * which costs no more than the bitset steps did
+ */
+
+public class BitsetBFS<T>{
+
+    //switch to bottom-up when frontier edges exceed unexplored edges / ALPHA
+    protected static final int ALPHA = 14;
+    //switch back to top-down when the frontier has fewer than n / BETA vertices
+    protected static final int BETA = 24;
+    //bitset words handled by one task before it stops splitting
+    protected static final int LEAF_WORDS = 64;
+
+    protected final GraphSnapshot<T> snapshot;
+    protected final ForkJoinPool pool;
+    //per-thread search state, reused between queries
+    protected final ThreadLocal<Search> searches;
+
+    /**
+     * the BitsetBFS constructor takes the snapshot to search on the common pool
+     * @param snapshot of the graph
+     */
+    public BitsetBFS(GraphSnapshot<T> snapshot){
+	this(snapshot, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * the BitsetBFS constructor takes the snapshot to search and the pool to expand frontiers on
+     * @param snapshot of the graph
+     * @param pool to run on
+     */
+    public BitsetBFS(GraphSnapshot<T> snapshot, ForkJoinPool pool){
+	this.snapshot = snapshot;
+	this.pool = pool;
+	searches = new ThreadLocal<Search>(){
+	    protected Search initialValue(){
+		return new Search();
+	    }
+	};
+    }
+
+    /**
+     * distances returns the number of edges on a shortest path from a source to every vertex
+     * @param source dense index
+     * @return distances indexed by dense index, -1 for vertices that cannot be reached
+     */
+    public int[] distances(int source){
+	Search search = searches.get();
+	search.start(source);
+	search.run(-1);
+	return search.dist.clone();
+    }
+
+    /**
+     * distance returns the number of edges on a shortest path between two vertices, stopping at the level where the
+     * target is reached
+     * @param source and target dense indices
+     * @return hop distance or -1 if target cannot be reached
+     */
+    public int distance(int source, int target){
+	Search search = searches.get();
+	search.start(source);
+	search.run(target);
+	return search.dist[target];
+    }
+
+    /**
+     * reachable returns the set of vertices that can be reached from a source
+     * @param source dense index
+     * @return bitset with bit i of word i / 64 set when vertex i is reachable
+     */
+    public long[] reachable(int source){
+	Search search = searches.get();
+	search.start(source);
+	search.run(-1);
+	long[] visited = new long[search.words];
+	for(int i = 0; i < visited.length; i++){
+	    visited[i] = search.visited.get(i);
+	}
+	return visited;
+    }
+
+    /**
+     * The Search class holds the state of one thread's breadth first searches
+     */
+    protected class Search{
+
+	protected final int n;
+	protected final int words;
+	protected final int[] dist;
+	protected final AtomicLongArray visited;
+	protected final AtomicLongArray next;
+	protected final long[] frontier;
+	//vertices reached in the order they were reached, while the search runs from the queue
+	protected final int[] queue;
+	protected int queueSize;
+	//true once the search has used the bitset steps, after which the queue is no longer kept
+	protected boolean dense;
+	protected int source;
+	protected int level;
+
+	protected Search(){
+	    n = snapshot.size();
+	    words = (n + 63) >>> 6;
+	    dist = new int[n];
+	    Arrays.fill(dist, -1);
+	    visited = new AtomicLongArray(words);
+	    next = new AtomicLongArray(words);
+	    frontier = new long[words];
+	    queue = new int[n];
+	}
+
+	/**
+	 * start resets what the last search touched and puts a new source on the frontier
+	 * @param source dense index
+	 */
+	protected void start(int source){
+	    if(dense){
+		Arrays.fill(dist, -1);
+		Arrays.fill(frontier, 0);
+		for(int i = 0; i < words; i++){
+		    visited.set(i, 0);
+		    next.set(i, 0);
+		}
+		dense = false;
+	    }
+	    else{
+		//every visited bit belongs to a vertex in the queue, so its whole word can be cleared
+		for(int i = 0; i < queueSize; i++){
+		    dist[queue[i]] = -1;
+		    visited.set(queue[i] >>> 6, 0);
+		}
+	    }
+	    this.source = source;
+	    dist[source] = 0;
+	    visited.set(source >>> 6, 1L << source);
+	    queue[0] = source;
+	    queueSize = 1;
+	    level = 0;
+	}
+
+	/**
+	 * run expands the frontier level by level until it is empty or the target has been reached
+	 * @param target dense index to stop at, or -1 to search everything
+	 */
+	protected void run(int target){
+	    long frontierSize = 1;
+	    long frontierEdges = snapshot.outDegree(source);
+	    long unexploredEdges = snapshot.edgeCount() - snapshot.inDegree(source);
+	    //while the search runs from the queue, the frontier is queue[levelStart] to queue[queueSize - 1]
+	    int levelStart = 0;
+	    boolean bottomUp = false;
+	    while(frontierSize > 0){
+		if(target >= 0 && dist[target] >= 0){
+		    return;
+		}
+		level++;
+		long[] counts;
+		if(!dense && frontierEdges < words){
+		    int levelEnd = queueSize;
+		    counts = queueTopDown(levelStart, levelEnd);
+		    levelStart = levelEnd;
+		}
+		else{
+		    if(!dense){
+			dense = true;
+			for(int i = levelStart; i < queueSize; i++){
+			    frontier[queue[i] >>> 6] |= 1L << queue[i];
+			}
+		    }
+		    if(!bottomUp && frontierEdges > unexploredEdges / ALPHA){
+			bottomUp = true;
+		    }
+		    else if(bottomUp && frontierSize < n / BETA){
+			bottomUp = false;
+		    }
+		    counts = pool.invoke(new StepTask(this, 0, words, bottomUp));
+		    for(int i = 0; i < words; i++){
+			frontier[i] = next.get(i);
+			next.set(i, 0);
+		    }
+		}
+		frontierSize = counts[0];
+		frontierEdges = counts[1];
+		unexploredEdges -= counts[2];
+	    }
+	}
+
+	/**
+	 * queueTopDown expands one level from the queue on the calling thread, adding the vertices it reaches to the
+	 * end of the queue
+	 * @param from and to the current level's range of the queue
+	 * @return {new frontier vertices, their outgoing edges, their incoming edges}
+	 */
+	protected long[] queueTopDown(int from, int to){
+	    long[] counts = new long[3];
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    for(int i = from; i < to; i++){
+		int v = queue[i];
+		int end = offsets[v + 1];
+		for(int slot = offsets[v]; slot < end; slot++){
+		    int w = targets[slot];
+		    if(dist[w] < 0){
+			dist[w] = level;
+			visited.set(w >>> 6, visited.get(w >>> 6) | (1L << w));
+			queue[queueSize++] = w;
+			counts[0]++;
+			counts[1] += snapshot.outDegree(w);
+			counts[2] += snapshot.inDegree(w);
+		    }
+		}
+	    }
+	    return counts;
+	}
+
+	/**
+	 * topDown expands the frontier vertices in a range of words along their outgoing edges, claiming unvisited
+	 * sinks with a compare and set on the visited bitset
+	 * @param from and to word range
+	 * @return {new frontier vertices, their outgoing edges, their incoming edges}
+	 */
+	protected long[] topDown(int from, int to){
+	    long[] counts = new long[3];
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    for(int word = from; word < to; word++){
+		long bits = frontier[word];
+		while(bits != 0){
+		    int v = (word << 6) + Long.numberOfTrailingZeros(bits);
+		    bits &= bits - 1;
+		    int end = offsets[v + 1];
+		    for(int slot = offsets[v]; slot < end; slot++){
+			int w = targets[slot];
+			if(claim(w)){
+			    dist[w] = level;
+			    setBit(next, w);
+			    counts[0]++;
+			    counts[1] += snapshot.outDegree(w);
+			    counts[2] += snapshot.inDegree(w);
+			}
+		    }
+		}
+	    }
+	    return counts;
+	}
+
+	/**
+	 * bottomUp has every unvisited vertex in a range of words look for a parent in the frontier among its
+	 * incoming edges. The task owns its words so no other thread writes them during the step
+	 * @param from and to word range
+	 * @return {new frontier vertices, their outgoing edges, their incoming edges}
+	 */
+	protected long[] bottomUp(int from, int to){
+	    long[] counts = new long[3];
+	    int[] offsets = snapshot.inOffsets;
+	    int[] sources = snapshot.inSources;
+	    for(int word = from; word < to; word++){
+		long seen = visited.get(word);
+		long found = 0;
+		int base = word << 6;
+		int limit = Math.min(64, n - base);
+		for(int bit = 0; bit < limit; bit++){
+		    if((seen & (1L << bit)) != 0){
+			continue;
+		    }
+		    int v = base + bit;
+		    int end = offsets[v + 1];
+		    for(int slot = offsets[v]; slot < end; slot++){
+			int u = sources[slot];
+			if((frontier[u >>> 6] & (1L << u)) != 0){
+			    found |= 1L << bit;
+			    dist[v] = level;
+			    counts[0]++;
+			    counts[1] += snapshot.outDegree(v);
+			    counts[2] += snapshot.inDegree(v);
+			    break;
+			}
+		    }
+		}
+		if(found != 0){
+		    visited.set(word, seen | found);
+		    next.set(word, found);
+		}
+	    }
+	    return counts;
+	}
+
+	/**
+	 * claim sets the visited bit of a vertex
+	 * @param v dense index
+	 * @return true if this call set the bit, false if the vertex was already visited
+	 */
+	protected boolean claim(int v){
+	    int word = v >>> 6;
+	    long mask = 1L << v;
+	    while(true){
+		long old = visited.get(word);
+		if((old & mask) != 0){
+		    return false;
+		}
+		if(visited.compareAndSet(word, old, old | mask)){
+		    return true;
+		}
+	    }
+	}
+    }
+
+    /**
+     * setBit sets one bit of an atomic bitset
+     * @param bits bitset
+     * @param v bit index
+     */
+    protected static void setBit(AtomicLongArray bits, int v){
+	int word = v >>> 6;
+	long mask = 1L << v;
+	long old = bits.get(word);
+	while((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask)){
+	    old = bits.get(word);
+	}
+    }
+
+    /**
+     * The StepTask class expands one level of the search over a range of bitset words, splitting the range in half
+     * until it is small enough
+     */
+    protected class StepTask extends RecursiveTask<long[]>{
+
+	protected final Search search;
+	protected final int from;
+	protected final int to;
+	protected final boolean bottomUp;
+
+	protected StepTask(Search search, int from, int to, boolean bottomUp){
+	    this.search = search;
+	    this.from = from;
+	    this.to = to;
+	    this.bottomUp = bottomUp;
+	}
+
+	protected long[] compute(){
+	    if(to - from <= LEAF_WORDS){
+		if(bottomUp){
+		    return search.bottomUp(from, to);
+		}
+		return search.topDown(from, to);
+	    }
+	    int mid = (from + to) >>> 1;
+	    StepTask left = new StepTask(search, from, mid, bottomUp);
+	    left.fork();
+	    long[] counts = new StepTask(search, mid, to, bottomUp).compute();
+	    long[] other = left.join();
+	    for(int i = 0; i < counts.length; i++){
+		counts[i] += other[i];
+	    }
+	    return counts;
+	}
+    }
+
+}
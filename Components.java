@@ -0,0 +1,326 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The Components class labels the weakly and strongly connected components of a graph snapshot, giving every vertex
+ * the number of its component, from 0 up.
+ *
+ * weak is Afforest, a lock-free union-find run over vertex ranges in parallel. Every vertex is first linked to its
+ * first few neighbors, which is usually enough to gather most vertices of the largest component under one root. A
+ * sample of vertices then finds that component, and the remaining pass over every edge skips vertices already in
+ * it, so a graph with one giant component needs much less than one look at every edge. Links always hang the larger
+ * root under the smaller one with a compare-and-set, so threads never wait on each other.
+ *
+ * strong is Tarjan's algorithm with its recursion turned into loops over explicit stacks. Each vertex keeps the
+ * position of its next unexplored edge, so deep graphs take heap memory rather than overflowing the call stack.
+ * Components come out in reverse topological order: an edge between two components always goes from a higher
+ * label to a lower one
+ */
+
+public class Components<T>{
+
+    //neighbors each vertex is linked to before sampling
+    protected static final int NEIGHBOR_ROUNDS = 2;
+    protected static final int SAMPLES = 1024;
+
+    //phases of a LinkTask
+    protected static final int SAMPLE_LINKS = 0;
+    protected static final int REMAINING_LINKS = 1;
+    protected static final int COMPRESS = 2;
+
+    protected final GraphSnapshot<T> snapshot;
+    //union-find parents for weak
+    protected AtomicIntegerArray parent;
+
+    /**
+     * the Components constructor takes the snapshot to label
+     * @param snapshot of the graph
+     */
+    public Components(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+    }
+
+    /**
+     * The Labels class holds the component of every vertex
+     */
+    public static class Labels{
+
+	protected final GraphSnapshot<?> snapshot;
+	protected final int[] labels;
+	protected final int count;
+
+	protected Labels(GraphSnapshot<?> snapshot, int[] labels, int count){
+	    this.snapshot = snapshot;
+	    this.labels = labels;
+	    this.count = count;
+	}
+
+	/**
+	 * getCount returns the number of components
+	 * @return count
+	 */
+	public int getCount(){
+	    return count;
+	}
+
+	/**
+	 * getLabels returns the component of every vertex by dense index, as GraphSnapshot.indexOf gives it
+	 * @return labels from 0 to getCount() - 1
+	 */
+	public int[] getLabels(){
+	    return labels;
+	}
+
+	/**
+	 * getLabel returns the component of a vertex
+	 * @param id of the vertex
+	 * @return label, or -1 if there is no such vertex
+	 */
+	public int getLabel(long id){
+	    int index = snapshot.indexOf(id);
+	    return index < 0 ? -1 : labels[index];
+	}
+
+	/**
+	 * getSizes returns the number of vertices in every component
+	 * @return sizes by label
+	 */
+	public int[] getSizes(){
+	    int[] sizes = new int[count];
+	    for(int label : labels){
+		sizes[label]++;
+	    }
+	    return sizes;
+	}
+    }
+
+    /**
+     * weak labels the weakly connected components, the parts that are connected when edge directions are ignored.
+     * Labels are numbered in order of the lowest dense index in each component
+     * @return labels
+     */
+    public Labels weak(){
+	return weak(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * weak labels the weakly connected components on a given pool
+     * @param pool to run on
+     * @return labels
+     */
+    public Labels weak(ForkJoinPool pool){
+	int n = snapshot.size();
+	parent = new AtomicIntegerArray(n);
+	for(int v = 0; v < n; v++){
+	    parent.set(v, v);
+	}
+	int leaf = Math.max(1024, n / (pool.getParallelism() * 8));
+	pool.invoke(new LinkTask(SAMPLE_LINKS, 0, n, leaf, -1));
+	pool.invoke(new LinkTask(COMPRESS, 0, n, leaf, -1));
+	int giant = sampleLargest();
+	pool.invoke(new LinkTask(REMAINING_LINKS, 0, n, leaf, giant));
+	pool.invoke(new LinkTask(COMPRESS, 0, n, leaf, -1));
+	//every root is its component's lowest index, so numbering roots in order numbers components by it too
+	int[] labels = new int[n];
+	int count = 0;
+	for(int v = 0; v < n; v++){
+	    int root = parent.get(v);
+	    labels[v] = root == v ? count++ : labels[root];
+	}
+	parent = null;
+	return new Labels(snapshot, labels, count);
+    }
+
+    /**
+     * sampleLargest guesses the root of the largest component from the roots of a sample of vertices
+     * @return root seen most often, or -1 for an empty graph
+     */
+    protected int sampleLargest(){
+	int n = snapshot.size();
+	if(n == 0){
+	    return -1;
+	}
+	LongIntHashMap counts = new LongIntHashMap(SAMPLES * 2);
+	int best = -1;
+	int bestCount = 0;
+	//a fixed stride through the vertices keeps the result the same from run to run
+	long stride = Math.max(1, n / SAMPLES);
+	for(long i = 0; i < n; i += stride){
+	    int root = parent.get((int) i);
+	    int count = counts.get(root, 0) + 1;
+	    counts.put(root, count);
+	    if(count > bestCount){
+		best = root;
+		bestCount = count;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * link joins the trees of two vertices by hanging the larger of their roots under the smaller. Another thread
+     * can move either root at the same time, so it retries from the new parents until the trees are joined
+     * @param u and v dense indices
+     */
+    protected void link(int u, int v){
+	int p1 = parent.get(u);
+	int p2 = parent.get(v);
+	while(p1 != p2){
+	    int high = Math.max(p1, p2);
+	    int low = Math.min(p1, p2);
+	    int highParent = parent.get(high);
+	    if(highParent == low){
+		return;
+	    }
+	    if(highParent == high && parent.compareAndSet(high, high, low)){
+		return;
+	    }
+	    p1 = parent.get(highParent);
+	    p2 = parent.get(low);
+	}
+    }
+
+    /**
+     * compress points a vertex straight at its root
+     * @param v dense index
+     */
+    protected void compress(int v){
+	while(parent.get(parent.get(v)) != parent.get(v)){
+	    parent.set(v, parent.get(parent.get(v)));
+	}
+    }
+
+    /**
+     * The LinkTask class runs one phase of weak over a range of vertices, splitting it in half until it is small
+     * enough for one thread. SAMPLE_LINKS links every vertex to its first few out and in neighbors,
+     * REMAINING_LINKS links the rest of the edges of every vertex outside the sampled giant component, and COMPRESS
+     * points every vertex at its root
+     */
+    protected class LinkTask extends RecursiveAction{
+
+	protected final int phase;
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+	protected final int giant;
+
+	protected LinkTask(int phase, int start, int end, int leaf, int giant){
+	    this.phase = phase;
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	    this.giant = giant;
+	}
+
+	protected void compute(){
+	    if(end - start > leaf){
+		int mid = (start + end) >>> 1;
+		invokeAll(new LinkTask(phase, start, mid, leaf, giant), new LinkTask(phase, mid, end, leaf, giant));
+		return;
+	    }
+	    int[] outOffsets = snapshot.outOffsets;
+	    int[] inOffsets = snapshot.inOffsets;
+	    for(int v = start; v < end; v++){
+		if(phase == COMPRESS){
+		    compress(v);
+		    continue;
+		}
+		int outFrom = outOffsets[v];
+		int inFrom = inOffsets[v];
+		int outTo = Math.min(outOffsets[v + 1], outFrom + NEIGHBOR_ROUNDS);
+		int inTo = Math.min(inOffsets[v + 1], inFrom + NEIGHBOR_ROUNDS);
+		if(phase == REMAINING_LINKS){
+		    if(parent.get(v) == giant){
+			continue;
+		    }
+		    //the sampled neighbors were linked already
+		    outFrom = outTo;
+		    inFrom = inTo;
+		    outTo = outOffsets[v + 1];
+		    inTo = inOffsets[v + 1];
+		}
+		for(int slot = outFrom; slot < outTo; slot++){
+		    link(v, snapshot.outTargets[slot]);
+		}
+		for(int slot = inFrom; slot < inTo; slot++){
+		    link(v, snapshot.inSources[slot]);
+		}
+	    }
+	}
+    }
+
+    /**
+     * strong labels the strongly connected components, the largest sets of vertices that can all reach each other
+     * along edge directions
+     * @return labels, in reverse topological order of the components
+     */
+    public Labels strong(){
+	int n = snapshot.size();
+	int[] offsets = snapshot.outOffsets;
+	int[] targets = snapshot.outTargets;
+	//order each vertex was reached in, -1 until then, and the lowest order reachable from it on the stack
+	int[] order = new int[n];
+	int[] lowest = new int[n];
+	//next out slot to explore from each vertex on the call stack
+	int[] nextSlot = new int[n];
+	int[] calls = new int[n];
+	int callSize = 0;
+	//vertices reached but not yet in a component
+	int[] stack = new int[n];
+	int stackSize = 0;
+	boolean[] onStack = new boolean[n];
+	int[] labels = new int[n];
+	int count = 0;
+	int reached = 0;
+	Arrays.fill(order, -1);
+	for(int root = 0; root < n; root++){
+	    if(order[root] >= 0){
+		continue;
+	    }
+	    order[root] = lowest[root] = reached++;
+	    nextSlot[root] = offsets[root];
+	    stack[stackSize++] = root;
+	    onStack[root] = true;
+	    calls[callSize++] = root;
+	    while(callSize > 0){
+		int v = calls[callSize - 1];
+		if(nextSlot[v] < offsets[v + 1]){
+		    int w = targets[nextSlot[v]++];
+		    if(order[w] < 0){
+			//descend into w
+			order[w] = lowest[w] = reached++;
+			nextSlot[w] = offsets[w];
+			stack[stackSize++] = w;
+			onStack[w] = true;
+			calls[callSize++] = w;
+		    }
+		    else if(onStack[w] && order[w] < lowest[v]){
+			lowest[v] = order[w];
+		    }
+		    continue;
+		}
+		//every edge of v is explored, return to its caller
+		callSize--;
+		if(callSize > 0){
+		    int caller = calls[callSize - 1];
+		    if(lowest[v] < lowest[caller]){
+			lowest[caller] = lowest[v];
+		    }
+		}
+		if(lowest[v] == order[v]){
+		    int w;
+		    do{
+			w = stack[--stackSize];
+			onStack[w] = false;
+			labels[w] = count;
+		    }while(w != v);
+		    count++;
+		}
+	    }
+	}
+	return new Labels(snapshot, labels, count);
+    }
+
+}
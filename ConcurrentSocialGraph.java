@@ -0,0 +1,828 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConcurrentSocialGraph class is a social graph that takes a live stream of new accounts, follows, unfollows and
+ * likes while other threads query it. Readers never lock and never see a half applied event: they work on an Epoch,
+ * an immutable view of the graph as it was when the epoch was published, and keep seeing that graph for as long as
+ * they hold on to it.
+ *
+ * Writes are applied by one thread at a time under a write lock. Vertices are kept in chunks of 1024 and every
+ * adjacency list in chunks of up to 128 entries. Everything reachable from a published epoch is frozen; the writer
+ * copies a chunk the first time it changes it after a publish and changes its copy in place until the next one. A
+ * publish copies only the top level chunk directories, so a stream of events costs about the size of the chunks
+ * they touch, not the size of the graph. By default an epoch is published after every 1024 events, and publish can
+ * be called at any time to make recent events visible.
+ *
+ * Accounts are never removed, so dense indices are handed out once and an id's index never changes. The id to index
+ * map is shared by every epoch; an index at or past an epoch's size is simply not part of that epoch
+ */
+
+public class ConcurrentSocialGraph{
+
+    //vertices per directory chunk
+    protected static final int VERTEX_BITS = 10;
+    protected static final int VERTEX_CHUNK = 1 << VERTEX_BITS;
+
+    protected final ReentrantLock writeLock;
+    protected final ConcurrentHashMap<Long, Integer> index;
+    protected final int publishEvery;
+    //the epoch number the writer is building; chunks tagged with it are private to the writer
+    protected int working;
+    protected int size;
+    protected long[][] ids;
+    protected String[][] names;
+    protected Adjacency[][] out;
+    protected Adjacency[][] in;
+    //the epoch each directory chunk of out and in was copied in
+    protected int[] outChunkEpoch;
+    protected int[] inChunkEpoch;
+    //positions of every edge in its source's out list and its sink's in list, keyed by pair, writer only
+    protected final LongIntHashMap outPosition;
+    protected final LongIntHashMap inPosition;
+    protected int pending;
+    protected volatile Epoch current;
+
+    /**
+     * the ConcurrentSocialGraph constructor makes an empty graph that publishes after every 1024 events
+     */
+    public ConcurrentSocialGraph(){
+	this(1024);
+    }
+
+    /**
+     * the ConcurrentSocialGraph constructor makes an empty graph
+     * @param publishEvery number of events after which a new epoch is published on its own
+     */
+    public ConcurrentSocialGraph(int publishEvery){
+	writeLock = new ReentrantLock();
+	index = new ConcurrentHashMap<Long, Integer>();
+	this.publishEvery = Math.max(1, publishEvery);
+	working = 0;
+	size = 0;
+	ids = new long[0][];
+	names = new String[0][];
+	out = new Adjacency[0][];
+	in = new Adjacency[0][];
+	outChunkEpoch = new int[0];
+	inChunkEpoch = new int[0];
+	outPosition = new LongIntHashMap(16);
+	inPosition = new LongIntHashMap(16);
+	pending = 0;
+	publish();
+    }
+
+    /**
+     * the ConcurrentSocialGraph constructor makes a graph holding the accounts, follows and likes of a SocialGraph
+     * @param graph to copy
+     * @param publishEvery number of events after which a new epoch is published on its own
+     */
+    public ConcurrentSocialGraph(SocialGraph graph, int publishEvery){
+	this(publishEvery);
+	writeLock.lock();
+	try{
+	    for(Vertex<String> vertex : graph.getVertices()){
+		addAccountLocked(vertex.getId(), vertex.getData());
+	    }
+	    for(Vertex<String> vertex : graph.getVertices()){
+		int source = index.get(vertex.getId());
+		for(Edge<String> edge : vertex.getOutgoing()){
+		    addEdgeLocked(source, index.get(edge.getSink().getId()), edge.getWeight());
+		}
+	    }
+	    publish();
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * epoch returns the latest published view of the graph. Queries that have to agree with each other should all
+     * be made on the same epoch
+     * @return epoch
+     */
+    public Epoch epoch(){
+	return current;
+    }
+
+    /**
+     * publish makes every event applied so far visible to readers
+     * @return the new epoch
+     */
+    public Epoch publish(){
+	writeLock.lock();
+	try{
+	    Epoch epoch = new Epoch(working, size, ids.clone(), names.clone(), out.clone(), in.clone(), index);
+	    current = epoch;
+	    working++;
+	    pending = 0;
+	    return epoch;
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * changed counts an applied event and publishes once enough of them have built up
+     */
+    protected void changed(){
+	pending++;
+	if(pending >= publishEvery){
+	    publish();
+	}
+    }
+
+    /**
+     * addAccount adds a new account
+     * @param id of the account
+     * @param name of the account
+     * @return false if there already is an account with the id
+     */
+    public boolean addAccount(long id, String name){
+	writeLock.lock();
+	try{
+	    if(!addAccountLocked(id, name)){
+		return false;
+	    }
+	    changed();
+	    return true;
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * follow makes one account follow another
+     * @param follower id of the account following
+     * @param followed id of the account being followed
+     * @return false if either account does not exist or the follow is already there
+     */
+    public boolean follow(long follower, long followed){
+	writeLock.lock();
+	try{
+	    Integer source = index.get(follower);
+	    Integer sink = index.get(followed);
+	    if(source == null || sink == null || !addEdgeLocked(source, sink, 1)){
+		return false;
+	    }
+	    changed();
+	    return true;
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * unfollow removes the follow from one account to another
+     * @param follower id of the account following
+     * @param followed id of the account being followed
+     * @return false if there was no such follow
+     */
+    public boolean unfollow(long follower, long followed){
+	writeLock.lock();
+	try{
+	    Integer source = index.get(follower);
+	    Integer sink = index.get(followed);
+	    if(source == null || sink == null){
+		return false;
+	    }
+	    int outSlot = outPosition.remove(pair(source, sink), -1);
+	    if(outSlot < 0){
+		return false;
+	    }
+	    int moved = writableOut(source).removeAt(outSlot, working);
+	    if(moved >= 0){
+		outPosition.put(pair(source, moved), outSlot);
+	    }
+	    int inSlot = inPosition.remove(pair(sink, source), -1);
+	    moved = writableIn(sink).removeAt(inSlot, working);
+	    if(moved >= 0){
+		inPosition.put(pair(sink, moved), inSlot);
+	    }
+	    changed();
+	    return true;
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * like records one account liking another, which adds one to the weight of the follow between them
+     * @param liker id of the account doing the liking
+     * @param liked id of the account being liked
+     * @return false if the liker does not follow the liked account
+     */
+    public boolean like(long liker, long liked){
+	writeLock.lock();
+	try{
+	    Integer source = index.get(liker);
+	    Integer sink = index.get(liked);
+	    if(source == null || sink == null){
+		return false;
+	    }
+	    int slot = outPosition.get(pair(source, sink), -1);
+	    if(slot < 0){
+		return false;
+	    }
+	    writableOut(source).addWeight(slot, working);
+	    changed();
+	    return true;
+	}
+	finally{
+	    writeLock.unlock();
+	}
+    }
+
+    /**
+     * addAccountLocked adds an account while the write lock is held
+     * @param id of the account
+     * @param name of the account
+     * @return false if there already is an account with the id
+     */
+    protected boolean addAccountLocked(long id, String name){
+	if(index.containsKey(id)){
+	    return false;
+	}
+	int chunk = size >>> VERTEX_BITS;
+	if(chunk == ids.length){
+	    int length = Math.max(4, ids.length * 2);
+	    ids = Arrays.copyOf(ids, length);
+	    names = Arrays.copyOf(names, length);
+	    out = Arrays.copyOf(out, length);
+	    in = Arrays.copyOf(in, length);
+	    outChunkEpoch = Arrays.copyOf(outChunkEpoch, length);
+	    inChunkEpoch = Arrays.copyOf(inChunkEpoch, length);
+	}
+	if(ids[chunk] == null){
+	    ids[chunk] = new long[VERTEX_CHUNK];
+	    names[chunk] = new String[VERTEX_CHUNK];
+	    out[chunk] = new Adjacency[VERTEX_CHUNK];
+	    in[chunk] = new Adjacency[VERTEX_CHUNK];
+	    outChunkEpoch[chunk] = working;
+	    inChunkEpoch[chunk] = working;
+	}
+	//ids and names only ever get new entries past the end of every published epoch, so they are not copied
+	ids[chunk][size & (VERTEX_CHUNK - 1)] = id;
+	names[chunk][size & (VERTEX_CHUNK - 1)] = name;
+	index.put(id, size);
+	size++;
+	return true;
+    }
+
+    /**
+     * addEdgeLocked adds an edge while the write lock is held
+     * @param source and sink dense indices
+     * @param weight of the edge
+     * @return false if the edge is already there
+     */
+    protected boolean addEdgeLocked(int source, int sink, float weight){
+	long key = pair(source, sink);
+	if(outPosition.containsKey(key)){
+	    return false;
+	}
+	Adjacency forward = writableOut(source);
+	outPosition.put(key, forward.size);
+	forward.add(sink, weight, working);
+	Adjacency backward = writableIn(sink);
+	inPosition.put(pair(sink, source), backward.size);
+	backward.add(source, weight, working);
+	return true;
+    }
+
+    /**
+     * pair packs two dense indices into one key
+     * @param first and second dense indices
+     * @return key
+     */
+    protected static long pair(int first, int second){
+	return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * writableOut and writableIn return an adjacency list the writer may change in place, copying its directory
+     * chunk and the list itself first if they belong to a published epoch
+     * @param v dense index
+     * @return adjacency list
+     */
+    protected Adjacency writableOut(int v){
+	int chunk = v >>> VERTEX_BITS;
+	if(outChunkEpoch[chunk] != working){
+	    out[chunk] = out[chunk].clone();
+	    outChunkEpoch[chunk] = working;
+	}
+	return writable(out[chunk], v & (VERTEX_CHUNK - 1), true);
+    }
+
+    protected Adjacency writableIn(int v){
+	int chunk = v >>> VERTEX_BITS;
+	if(inChunkEpoch[chunk] != working){
+	    in[chunk] = in[chunk].clone();
+	    inChunkEpoch[chunk] = working;
+	}
+	return writable(in[chunk], v & (VERTEX_CHUNK - 1), false);
+    }
+
+    /**
+     * writable returns the adjacency list at a position of a writable directory chunk, making or copying it if
+     * needed
+     * @param chunk writable directory chunk
+     * @param position in the chunk
+     * @param weighted true for out lists, which carry weights
+     * @return adjacency list
+     */
+    protected Adjacency writable(Adjacency[] chunk, int position, boolean weighted){
+	Adjacency list = chunk[position];
+	if(list == null){
+	    list = new Adjacency(working, weighted);
+	    chunk[position] = list;
+	}
+	else if(list.epoch != working){
+	    list = list.copy(working);
+	    chunk[position] = list;
+	}
+	return list;
+    }
+
+    /**
+     * getName, getIDs, getFollows, getFollowers and getLikes answer from the latest epoch, as SocialGraph does
+     */
+    public String getName(long id){
+	return epoch().getName(id);
+    }
+
+    public long[] getIDs(){
+	return epoch().getIDs();
+    }
+
+    public long[] getFollows(long id){
+	return epoch().getFollows(id);
+    }
+
+    public long[] getFollowers(long id){
+	return epoch().getFollowers(id);
+    }
+
+    public float getLikes(long id1, long id2){
+	return epoch().getLikes(id1, id2);
+    }
+
+    /**
+     * The Adjacency class holds one vertex's out or in list as a directory of chunks. A chunk starts small and
+     * doubles up to CHUNK entries, after which new chunks are added, so small lists stay small. The list and each
+     * chunk are tagged with the epoch they were made in, and the writer copies anything with an older tag before
+     * changing it
+     */
+    protected static class Adjacency{
+
+	protected static final int BITS = 7;
+	protected static final int CHUNK = 1 << BITS;
+
+	protected final int epoch;
+	protected int size;
+	protected int[][] chunks;
+	//null for in lists
+	protected float[][] weights;
+	protected int[] chunkEpoch;
+
+	protected Adjacency(int epoch, boolean weighted){
+	    this.epoch = epoch;
+	    size = 0;
+	    chunks = new int[1][];
+	    weights = weighted ? new float[1][] : null;
+	    chunkEpoch = new int[1];
+	}
+
+	/**
+	 * copy returns a writable copy of the list for a new epoch that shares all of its chunks
+	 * @param epoch the writer is building
+	 * @return copy
+	 */
+	protected Adjacency copy(int epoch){
+	    Adjacency copy = new Adjacency(epoch, weights != null);
+	    copy.size = size;
+	    copy.chunks = chunks.clone();
+	    copy.weights = weights == null ? null : weights.clone();
+	    copy.chunkEpoch = chunkEpoch.clone();
+	    return copy;
+	}
+
+	/**
+	 * get returns the neighbor at a position
+	 * @param i position
+	 * @return dense index
+	 */
+	protected int get(int i){
+	    return chunks[i >>> BITS][i & (CHUNK - 1)];
+	}
+
+	/**
+	 * weight returns the weight at a position
+	 * @param i position
+	 * @return weight
+	 */
+	protected float weight(int i){
+	    return weights[i >>> BITS][i & (CHUNK - 1)];
+	}
+
+	/**
+	 * own makes a chunk private to the writer, copying it if it belongs to a published epoch
+	 * @param chunk number
+	 * @param epoch the writer is building
+	 */
+	protected void own(int chunk, int epoch){
+	    if(chunkEpoch[chunk] != epoch){
+		chunks[chunk] = chunks[chunk].clone();
+		if(weights != null){
+		    weights[chunk] = weights[chunk].clone();
+		}
+		chunkEpoch[chunk] = epoch;
+	    }
+	}
+
+	/**
+	 * add puts a neighbor at the end of the list
+	 * @param v dense index of the neighbor
+	 * @param weight of the edge
+	 * @param epoch the writer is building
+	 */
+	protected void add(int v, float weight, int epoch){
+	    int chunk = size >>> BITS;
+	    int offset = size & (CHUNK - 1);
+	    if(chunk == chunks.length){
+		chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		chunkEpoch = Arrays.copyOf(chunkEpoch, chunks.length);
+		if(weights != null){
+		    weights = Arrays.copyOf(weights, chunks.length);
+		}
+	    }
+	    if(chunks[chunk] == null || offset == chunks[chunk].length){
+		//a new chunk, or a chunk that is still growing towards CHUNK entries
+		int length = chunks[chunk] == null ? 4 : Math.min(CHUNK, chunks[chunk].length * 2);
+		chunks[chunk] = chunks[chunk] == null ? new int[length] : Arrays.copyOf(chunks[chunk], length);
+		if(weights != null){
+		    weights[chunk] = weights[chunk] == null ? new float[length] : Arrays.copyOf(weights[chunk], length);
+		}
+		chunkEpoch[chunk] = epoch;
+	    }
+	    else{
+		own(chunk, epoch);
+	    }
+	    chunks[chunk][offset] = v;
+	    if(weights != null){
+		weights[chunk][offset] = weight;
+	    }
+	    size++;
+	}
+
+	/**
+	 * removeAt takes out the neighbor at a position by moving the last neighbor into its place
+	 * @param i position
+	 * @param epoch the writer is building
+	 * @return the neighbor that was moved into position i, or -1 if i was the last position
+	 */
+	protected int removeAt(int i, int epoch){
+	    int last = size - 1;
+	    int moved = -1;
+	    if(i != last){
+		moved = get(last);
+		int chunk = i >>> BITS;
+		own(chunk, epoch);
+		chunks[chunk][i & (CHUNK - 1)] = moved;
+		if(weights != null){
+		    weights[chunk][i & (CHUNK - 1)] = weight(last);
+		}
+	    }
+	    size--;
+	    return moved;
+	}
+
+	/**
+	 * addWeight adds one to the weight at a position
+	 * @param i position
+	 * @param epoch the writer is building
+	 */
+	protected void addWeight(int i, int epoch){
+	    int chunk = i >>> BITS;
+	    own(chunk, epoch);
+	    weights[chunk][i & (CHUNK - 1)]++;
+	}
+    }
+
+    /**
+     * The Epoch class is an immutable view of the graph as it was when it was published. It can be read by any
+     * number of threads without locking
+     */
+    public static class Epoch{
+
+	protected final int number;
+	protected final int size;
+	protected final long[][] ids;
+	protected final String[][] names;
+	protected final Adjacency[][] out;
+	protected final Adjacency[][] in;
+	protected final ConcurrentHashMap<Long, Integer> index;
+	//snapshot of the epoch and the path engines on it, made on first use
+	protected GraphSnapshot<String> snapshot;
+	protected ShortestPath<String> pathEngine;
+	protected BitsetBFS<String> hopEngine;
+
+	protected Epoch(int number, int size, long[][] ids, String[][] names, Adjacency[][] out, Adjacency[][] in,
+			ConcurrentHashMap<Long, Integer> index){
+	    this.number = number;
+	    this.size = size;
+	    this.ids = ids;
+	    this.names = names;
+	    this.out = out;
+	    this.in = in;
+	    this.index = index;
+	}
+
+	/**
+	 * getNumber returns the number of the epoch, which goes up by one with every publish
+	 * @return number
+	 */
+	public int getNumber(){
+	    return number;
+	}
+
+	/**
+	 * size returns the number of accounts in the epoch
+	 * @return number of accounts
+	 */
+	public int size(){
+	    return size;
+	}
+
+	/**
+	 * indexOf returns the dense index of an id
+	 * @param id
+	 * @return dense index, or -1 if the account is not in this epoch
+	 */
+	public int indexOf(long id){
+	    Integer i = index.get(id);
+	    if(i == null || i >= size){
+		return -1;
+	    }
+	    return i;
+	}
+
+	/**
+	 * idOf and nameOf return the id and name of the account with a dense index
+	 * @param i dense index
+	 * @return id or name
+	 */
+	public long idOf(int i){
+	    return ids[i >>> VERTEX_BITS][i & (VERTEX_CHUNK - 1)];
+	}
+
+	public String nameOf(int i){
+	    return names[i >>> VERTEX_BITS][i & (VERTEX_CHUNK - 1)];
+	}
+
+	/**
+	 * outList and inList return the adjacency lists of an account
+	 * @param i dense index
+	 * @return list, or null if it has never had an edge
+	 */
+	protected Adjacency outList(int i){
+	    return out[i >>> VERTEX_BITS][i & (VERTEX_CHUNK - 1)];
+	}
+
+	protected Adjacency inList(int i){
+	    return in[i >>> VERTEX_BITS][i & (VERTEX_CHUNK - 1)];
+	}
+
+	/**
+	 * outDegree and inDegree return the number of accounts an account follows and is followed by
+	 * @param i dense index
+	 * @return degree
+	 */
+	public int outDegree(int i){
+	    Adjacency list = outList(i);
+	    return list == null ? 0 : list.size;
+	}
+
+	public int inDegree(int i){
+	    Adjacency list = inList(i);
+	    return list == null ? 0 : list.size;
+	}
+
+	/**
+	 * outTarget and outWeight return the sink and weight of an account's k-th follow, and inSource the source of
+	 * its k-th follower
+	 * @param i dense index
+	 * @param k position in the list
+	 * @return dense index or weight
+	 */
+	public int outTarget(int i, int k){
+	    return outList(i).get(k);
+	}
+
+	public float outWeight(int i, int k){
+	    return outList(i).weight(k);
+	}
+
+	public int inSource(int i, int k){
+	    return inList(i).get(k);
+	}
+
+	/**
+	 * getName takes an id and returns the name of the account
+	 * @param id
+	 * @return name, or null if the account is not in this epoch
+	 */
+	public String getName(long id){
+	    int i = indexOf(id);
+	    return i < 0 ? null : nameOf(i);
+	}
+
+	/**
+	 * getIDs returns the ids of every account in the epoch
+	 * @return array of ids
+	 */
+	public long[] getIDs(){
+	    long[] result = new long[size];
+	    for(int i = 0; i < size; i++){
+		result[i] = idOf(i);
+	    }
+	    return result;
+	}
+
+	/**
+	 * getFollows returns the ids of the accounts an account follows
+	 * @param id
+	 * @return array of ids, or null if the account is not in this epoch
+	 */
+	public long[] getFollows(long id){
+	    int i = indexOf(id);
+	    if(i < 0){
+		return null;
+	    }
+	    long[] result = new long[outDegree(i)];
+	    for(int k = 0; k < result.length; k++){
+		result[k] = idOf(outTarget(i, k));
+	    }
+	    return result;
+	}
+
+	/**
+	 * getFollowers returns the ids of the accounts that follow an account
+	 * @param id
+	 * @return array of ids, or null if the account is not in this epoch
+	 */
+	public long[] getFollowers(long id){
+	    int i = indexOf(id);
+	    if(i < 0){
+		return null;
+	    }
+	    long[] result = new long[inDegree(i)];
+	    for(int k = 0; k < result.length; k++){
+		result[k] = idOf(inSource(i, k));
+	    }
+	    return result;
+	}
+
+	/**
+	 * getLikes returns the number of times one account liked another
+	 * @param id1 the account doing the liking
+	 * @param id2 the account being liked
+	 * @return the number of times id1 liked id2
+	 */
+	public float getLikes(long id1, long id2){
+	    int source = indexOf(id1);
+	    int sink = indexOf(id2);
+	    if(source < 0 || sink < 0){
+		return 0;
+	    }
+	    int degree = outDegree(source);
+	    for(int k = 0; k < degree; k++){
+		if(outTarget(source, k) == sink){
+		    return outWeight(source, k) - 1;
+		}
+	    }
+	    return 0;
+	}
+
+	/**
+	 * getShortestPath finds the cheapest path between two accounts, using edge weights as costs like
+	 * Graph.getShortestPath. It runs a ShortestPath engine on the epoch's snapshot
+	 * @param from and to ids
+	 * @return ids along the path from from to to, or null if there is no path
+	 */
+	public long[] getShortestPath(long from, long to){
+	    return shortestPathEngine().getShortestPathIds(from, to);
+	}
+
+	/**
+	 * shortestPathSteps finds the fewest follows between two accounts with a BitsetBFS on the epoch's snapshot
+	 * @param from and to ids
+	 * @return number of steps, or -1 if either account is not in this epoch or there is no path
+	 */
+	public int shortestPathSteps(long from, long to){
+	    BitsetBFS<String> engine = hopEngine();
+	    int start = engine.snapshot.indexOf(from);
+	    int end = engine.snapshot.indexOf(to);
+	    if(start < 0 || end < 0){
+		return -1;
+	    }
+	    return engine.distance(start, end);
+	}
+
+	/**
+	 * shortestPathEngine and hopEngine return the engines for the epoch's snapshot, made on first use. An epoch
+	 * never changes, so they are kept for as long as the epoch is
+	 * @return engine
+	 */
+	protected synchronized ShortestPath<String> shortestPathEngine(){
+	    if(pathEngine == null){
+		pathEngine = new ShortestPath<String>(toSnapshot());
+	    }
+	    return pathEngine;
+	}
+
+	protected synchronized BitsetBFS<String> hopEngine(){
+	    if(hopEngine == null){
+		hopEngine = new BitsetBFS<String>(toSnapshot());
+	    }
+	    return hopEngine;
+	}
+
+	/**
+	 * toSnapshot returns a GraphSnapshot of the epoch so the analytics in Graph can be run on it. It is built
+	 * once per epoch, straight from the adjacency chunks. The snapshot has no edge objects, so it gives
+	 * distances, scores and paths of ids but not paths of edges
+	 * @return snapshot
+	 */
+	public synchronized GraphSnapshot<String> toSnapshot(){
+	    if(snapshot != null){
+		return snapshot;
+	    }
+	    //the snapshot orders vertices by id, so every epoch index is mapped to the rank of its id
+	    long[] sorted = getIDs();
+	    Arrays.sort(sorted);
+	    int[] rank = new int[size];
+	    int[] byRank = new int[size];
+	    Object[] data = new Object[size];
+	    for(int i = 0; i < size; i++){
+		rank[i] = Arrays.binarySearch(sorted, idOf(i));
+		byRank[rank[i]] = i;
+		data[rank[i]] = nameOf(i);
+	    }
+	    int[] outOffsets = new int[size + 1];
+	    int widest = 0;
+	    for(int r = 0; r < size; r++){
+		int degree = outDegree(byRank[r]);
+		outOffsets[r + 1] = outOffsets[r] + degree;
+		widest = Math.max(widest, degree);
+	    }
+	    int m = outOffsets[size];
+	    int[] outTargets = new int[m];
+	    float[] outWeights = new float[m];
+	    int[] inOffsets = new int[size + 1];
+	    //each follow list is sorted by target rank, with the weight carried in the low bits
+	    long[] packed = new long[widest];
+	    for(int r = 0; r < size; r++){
+		int i = byRank[r];
+		int start = outOffsets[r];
+		int degree = outOffsets[r + 1] - start;
+		for(int k = 0; k < degree; k++){
+		    long weight = Float.floatToRawIntBits(outWeight(i, k)) & 0xffffffffL;
+		    packed[k] = (long) rank[outTarget(i, k)] << 32 | weight;
+		}
+		Arrays.sort(packed, 0, degree);
+		for(int k = 0; k < degree; k++){
+		    int target = (int) (packed[k] >>> 32);
+		    outTargets[start + k] = target;
+		    outWeights[start + k] = Float.intBitsToFloat((int) packed[k]);
+		    inOffsets[target + 1]++;
+		}
+	    }
+	    for(int r = 0; r < size; r++){
+		inOffsets[r + 1] += inOffsets[r];
+	    }
+	    //walking the sources in order leaves every incoming slice sorted by source
+	    int[] inSources = new int[m];
+	    float[] inWeights = new float[m];
+	    int[] inEdges = new int[m];
+	    int[] next = Arrays.copyOf(inOffsets, size);
+	    for(int r = 0; r < size; r++){
+		for(int slot = outOffsets[r]; slot < outOffsets[r + 1]; slot++){
+		    int in = next[outTargets[slot]]++;
+		    inSources[in] = r;
+		    inWeights[in] = outWeights[slot];
+		    inEdges[in] = slot;
+		}
+	    }
+	    snapshot = new GraphSnapshot<String>(sorted, data, outOffsets, outTargets, outWeights, null, inOffsets,
+						 inSources, inWeights, inEdges);
+	    return snapshot;
+	}
+    }
+
+}
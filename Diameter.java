@@ -0,0 +1,384 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The Diameter class finds the diameter (the most edges on any shortest path) and the radius (the smallest
+ * eccentricity) of a graph snapshot, counting only pairs of vertices that are connected. Eccentricities come from
+ * breadth first searches.
+ *
+ * When every edge has a reverse edge, as in the output of makeUndirected, each connected component is handled with a
+ * double sweep to find a good lower bound and a central start vertex, then iFUB, which walks the BFS levels of that
+ * vertex from the bottom up and stops as soon as the upper bound 2(i - 1) drops to the best eccentricity found.
+ * The eccentricity bounds every search leaves behind are then used to settle the radius with a few more searches.
+ * This usually needs only a handful of searches per component. Directed graphs fall back to a search from every
+ * vertex, run in parallel
+ */
+
+public class Diameter<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+
+    /**
+     * the Diameter constructor takes the snapshot to measure
+     * @param snapshot of the graph
+     */
+    public Diameter(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+    }
+
+    /**
+     * The Result class holds the diameter, the radius and a pair of vertices as far apart as the diameter
+     */
+    public static class Result{
+
+	protected final int diameter;
+	protected final int radius;
+	protected final long from;
+	protected final long to;
+
+	protected Result(int diameter, int radius, long from, long to){
+	    this.diameter = diameter;
+	    this.radius = radius;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	/**
+	 * getDiameter returns the most edges on a shortest path between any two connected vertices
+	 * @return diameter
+	 */
+	public int getDiameter(){
+	    return diameter;
+	}
+
+	/**
+	 * getRadius returns the smallest eccentricity of any vertex with at least one vertex reachable from it
+	 * @return radius, 0 if there are no edges
+	 */
+	public int getRadius(){
+	    return radius;
+	}
+
+	/**
+	 * getFrom and getTo return the ids of a pair of vertices whose shortest path is as long as the diameter
+	 * @return id
+	 */
+	public long getFrom(){
+	    return from;
+	}
+
+	public long getTo(){
+	    return to;
+	}
+    }
+
+    /**
+     * compute finds the diameter and radius
+     * @return result
+     */
+    public Result compute(){
+	if(snapshot.size() == 0){
+	    return new Result(0, 0, 0, 0);
+	}
+	if(isSymmetric()){
+	    return bounded();
+	}
+	return allSources(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * isSymmetric checks whether every edge has an edge going back the other way
+     * @return true if the graph is effectively undirected
+     */
+    protected boolean isSymmetric(){
+	int n = snapshot.size();
+	for(int v = 0; v < n; v++){
+	    for(int slot = snapshot.outOffsets[v]; slot < snapshot.outOffsets[v + 1]; slot++){
+		if(snapshot.findEdge(snapshot.outTargets[slot], v) < 0){
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * The Search class holds the arrays for repeated breadth first searches. Only the entries reached by the last
+     * search are reset before the next one
+     */
+    protected class Search{
+
+	protected final int[] dist;
+	protected final int[] parent;
+	//vertices in the order they were reached, which is also the queue
+	protected final int[] queue;
+	protected int reached;
+
+	protected Search(){
+	    int n = snapshot.size();
+	    dist = new int[n];
+	    parent = new int[n];
+	    queue = new int[n];
+	    Arrays.fill(dist, -1);
+	    reached = 0;
+	}
+
+	/**
+	 * run does a breadth first search along outgoing edges
+	 * @param source dense index
+	 * @return the eccentricity of source, the distance of the last vertex reached
+	 */
+	protected int run(int source){
+	    for(int i = 0; i < reached; i++){
+		dist[queue[i]] = -1;
+	    }
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    dist[source] = 0;
+	    parent[source] = -1;
+	    queue[0] = source;
+	    reached = 1;
+	    for(int head = 0; head < reached; head++){
+		int v = queue[head];
+		int end = offsets[v + 1];
+		for(int slot = offsets[v]; slot < end; slot++){
+		    int w = targets[slot];
+		    if(dist[w] < 0){
+			dist[w] = dist[v] + 1;
+			parent[w] = v;
+			queue[reached++] = w;
+		    }
+		}
+	    }
+	    return dist[queue[reached - 1]];
+	}
+
+	/**
+	 * last returns the last vertex reached, one of the farthest from the source
+	 * @return dense index
+	 */
+	protected int last(){
+	    return queue[reached - 1];
+	}
+    }
+
+    /**
+     * bounded handles an undirected graph one connected component at a time with a double sweep, iFUB and
+     * eccentricity bounds for the radius
+     * @return result
+     */
+    protected Result bounded(){
+	int n = snapshot.size();
+	Search search = new Search();
+	boolean[] done = new boolean[n];
+	//lower and upper bounds on the eccentricity of every vertex
+	int[] low = new int[n];
+	int[] high = new int[n];
+	int diameter = 0;
+	int radius = Integer.MAX_VALUE;
+	int from = 0;
+	int to = 0;
+	for(int start = 0; start < n; start++){
+	    if(done[start]){
+		continue;
+	    }
+	    //find the component and its highest degree vertex
+	    search.run(start);
+	    int size = search.reached;
+	    int[] component = Arrays.copyOf(search.queue, size);
+	    int root = start;
+	    for(int v : component){
+		done[v] = true;
+		low[v] = 0;
+		high[v] = Integer.MAX_VALUE;
+		if(snapshot.outDegree(v) > snapshot.outDegree(root)){
+		    root = v;
+		}
+	    }
+	    if(size == 1){
+		continue;
+	    }
+	    Component measured = new Component(search, low, high);
+	    measured.measure(root);
+	    if(measured.diameter > diameter){
+		diameter = measured.diameter;
+		from = measured.from;
+		to = measured.to;
+	    }
+	    radius = Math.min(radius, measured.radius(component));
+	}
+	if(radius == Integer.MAX_VALUE){
+	    radius = 0;
+	}
+	return new Result(diameter, radius, snapshot.idOf(from), snapshot.idOf(to));
+    }
+
+    /**
+     * The Component class measures one connected component of an undirected graph
+     */
+    protected class Component{
+
+	protected final Search search;
+	protected final int[] low;
+	protected final int[] high;
+	protected int diameter;
+	protected int from;
+	protected int to;
+
+	protected Component(Search search, int[] low, int[] high){
+	    this.search = search;
+	    this.low = low;
+	    this.high = high;
+	    diameter = -1;
+	}
+
+	/**
+	 * eccentricity runs a search from a vertex, keeps the best diameter pair and tightens the eccentricity
+	 * bounds of every vertex in the component using ecc(u) - d(u, v) <= ecc(v) <= ecc(u) + d(u, v)
+	 * @param u dense index
+	 * @return eccentricity of u
+	 */
+	protected int eccentricity(int u){
+	    int ecc = search.run(u);
+	    if(ecc > diameter){
+		diameter = ecc;
+		from = u;
+		to = search.last();
+	    }
+	    for(int i = 0; i < search.reached; i++){
+		int v = search.queue[i];
+		int d = search.dist[v];
+		low[v] = Math.max(low[v], Math.max(d, ecc - d));
+		high[v] = Math.min(high[v], ecc + d);
+	    }
+	    return ecc;
+	}
+
+	/**
+	 * measure finds the exact diameter of the component with a double sweep followed by iFUB
+	 * @param root dense index of a high degree vertex in the component
+	 */
+	protected void measure(int root){
+	    //double sweep: the farthest vertex from the root, then the farthest vertex from that
+	    eccentricity(root);
+	    int a = search.last();
+	    eccentricity(a);
+	    int b = search.last();
+	    //the middle of the a-b path is a good central vertex to start iFUB from
+	    int middle = b;
+	    for(int steps = search.dist[b] / 2; steps > 0; steps--){
+		middle = search.parent[middle];
+	    }
+	    int ecc = eccentricity(middle);
+	    int[] levels = Arrays.copyOf(search.dist, search.dist.length);
+	    int[] order = Arrays.copyOf(search.queue, search.reached);
+	    //walk the BFS levels of middle from the deepest up, the last vertices in order are the deepest
+	    int index = order.length - 1;
+	    for(int level = ecc; level > 0; level--){
+		if(diameter >= 2 * level){
+		    break;
+		}
+		while(index >= 0 && levels[order[index]] == level){
+		    eccentricity(order[index]);
+		    index--;
+		}
+		//every pair not yet examined has both ends within level - 1 of middle
+		if(diameter > 2 * (level - 1)){
+		    break;
+		}
+	    }
+	}
+
+	/**
+	 * radius finds the smallest eccentricity in the component by searching from the vertex with the smallest
+	 * lower bound until no vertex could beat the best eccentricity found
+	 * @param component dense indices of the vertices in the component
+	 * @return radius of the component
+	 */
+	protected int radius(int[] component){
+	    int best = Integer.MAX_VALUE;
+	    for(int v : component){
+		best = Math.min(best, high[v]);
+	    }
+	    while(true){
+		int next = -1;
+		for(int v : component){
+		    if(low[v] < high[v] && low[v] < best && (next < 0 || low[v] < low[next])){
+			next = v;
+		    }
+		}
+		if(next < 0){
+		    return best;
+		}
+		int ecc = eccentricity(next);
+		low[next] = ecc;
+		high[next] = ecc;
+		best = Math.min(best, ecc);
+	    }
+	}
+    }
+
+    /**
+     * allSources runs a breadth first search from every vertex in parallel
+     * @param pool to run the searches on
+     * @return result
+     */
+    protected Result allSources(ForkJoinPool pool){
+	int n = snapshot.size();
+	int leaf = Math.max(1, n / (pool.getParallelism() * 8));
+	long[] best = pool.invoke(new SourceTask(0, n, leaf));
+	int from = (int) best[2];
+	int to = (int) best[3];
+	int radius = best[1] == Integer.MAX_VALUE ? 0 : (int) best[1];
+	return new Result((int) best[0], radius, snapshot.idOf(from), snapshot.idOf(to));
+    }
+
+    /**
+     * The SourceTask class searches from a range of sources and returns {diameter, radius, from, to} for them
+     */
+    protected class SourceTask extends RecursiveTask<long[]>{
+
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+
+	protected SourceTask(int start, int end, int leaf){
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	}
+
+	protected long[] compute(){
+	    if(end - start <= leaf){
+		Search search = new Search();
+		long[] best = {0, Integer.MAX_VALUE, start, start};
+		for(int source = start; source < end; source++){
+		    int ecc = search.run(source);
+		    if(ecc > best[0]){
+			best[0] = ecc;
+			best[2] = source;
+			best[3] = search.last();
+		    }
+		    if(ecc > 0 && ecc < best[1]){
+			best[1] = ecc;
+		    }
+		}
+		return best;
+	    }
+	    int mid = (start + end) >>> 1;
+	    SourceTask left = new SourceTask(start, mid, leaf);
+	    left.fork();
+	    long[] right = new SourceTask(mid, end, leaf).compute();
+	    long[] best = left.join();
+	    if(right[0] > best[0]){
+		best[0] = right[0];
+		best[2] = right[2];
+		best[3] = right[3];
+	    }
+	    best[1] = Math.min(best[1], right[1]);
+	    return best;
+	}
+    }
+
+}
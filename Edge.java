@@ -41,6 +41,9 @@ public class Edge<T>{
      */
     public void setWieght(float newWeight){
 	weight = newWeight;
+	if(source != null){
+	    source.changed();
+	}
     }
 
     /**
@@ -48,6 +51,9 @@ public class Edge<T>{
      */
     public void incrementWeight(){
 	weight++;
+	if(source != null){
+	    source.changed();
+	}
     }
 
     /**
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+
+/**
+ * The EdgeIndex class maps the id at the far end of each edge in an adjacency list (the sink for outgoing lists, the
+ * source for incoming ones) to the position of that edge in the list, so an edge to a given vertex can be found and
+ * removed in constant time. A vertex only makes one once its list grows past Vertex.INDEX_THRESHOLD, so small
+ * vertices pay nothing for it.
+ *
+ * The list may hold more than one edge to the same vertex. The index then points at one of them and counts the
+ * others, and only lookups that have to see every such edge fall back to scanning
+ */
+
+public class EdgeIndex<T>{
+
+    protected final ArrayList<Edge<T>> edges;
+    //true if keyed by sink id, false if keyed by source id
+    protected final boolean bySink;
+    protected final LongIntHashMap slots;
+    //edges in the list whose key is already in slots for another edge
+    protected int duplicates;
+
+    /**
+     * the EdgeIndex constructor indexes every edge already in a list
+     * @param edges adjacency list to index
+     * @param bySink true to key by sink id, false to key by source id
+     */
+    public EdgeIndex(ArrayList<Edge<T>> edges, boolean bySink){
+	this.edges = edges;
+	this.bySink = bySink;
+	slots = new LongIntHashMap(edges.size() * 2);
+	duplicates = 0;
+	for(int slot = 0; slot < edges.size(); slot++){
+	    added(slot);
+	}
+    }
+
+    /**
+     * keyOf returns the id an edge is indexed by
+     * @param edge
+     * @return sink or source id
+     */
+    protected long keyOf(Edge<T> edge){
+	return bySink ? edge.getSink().getId() : edge.getSource().getId();
+    }
+
+    /**
+     * added indexes an edge that was just put into the list
+     * @param slot of the edge in the list
+     */
+    public void added(int slot){
+	if(slots.putIfAbsent(keyOf(edges.get(slot)), slot) != slot){
+	    duplicates++;
+	}
+    }
+
+    /**
+     * find returns the position of an edge to or from a given vertex
+     * @param id of the vertex at the far end
+     * @return position in the list, or -1 if there is no such edge
+     */
+    public int find(long id){
+	return slots.get(id, -1);
+    }
+
+    /**
+     * hasDuplicates returns whether some vertex is at the far end of more than one edge in the list
+     * @return true if there are parallel edges
+     */
+    public boolean hasDuplicates(){
+	return duplicates > 0;
+    }
+
+    /**
+     * remove takes an edge out of the list by moving the last edge into its place, so the order of the list is not
+     * kept
+     * @param edge to remove
+     * @return true if the edge was in the list
+     */
+    public boolean remove(Edge<T> edge){
+	long key = keyOf(edge);
+	int slot = slots.get(key, -1);
+	if(slot < 0){
+	    return false;
+	}
+	boolean indexed = edges.get(slot) == edge;
+	if(!indexed){
+	    //a parallel edge, which is not in the index
+	    slot = edges.indexOf(edge);
+	    if(slot < 0){
+		return false;
+	    }
+	    duplicates--;
+	}
+	int last = edges.size() - 1;
+	Edge<T> moved = edges.get(last);
+	edges.set(slot, moved);
+	edges.remove(last);
+	if(slot != last && slots.get(keyOf(moved), -1) == last){
+	    slots.put(keyOf(moved), slot);
+	}
+	if(indexed){
+	    slots.remove(key, -1);
+	    if(duplicates > 0){
+		//point the index at another edge with the same key if there is one
+		for(int i = 0; i < edges.size(); i++){
+		    if(keyOf(edges.get(i)) == key){
+			slots.put(key, i);
+			duplicates--;
+			break;
+		    }
+		}
+	    }
+	}
+	return true;
+    }
+
+}
@@ -3,10 +3,7 @@ import java.util.Hashtable;
 import java.util.Collection;
 import java.lang.Long;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.PriorityQueue;
-import java.util.LinkedList;
-import java.util.Enumeration;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The graph class contains an implementation of a graph
@@ -15,14 +12,30 @@ import java.util.Enumeration;
 
 public class Graph<T>{
 
-    protected Hashtable<Long, Vertex<T>> graph;
+    //every vertex in the graph by id
+    protected VertexStore<T> graph;
+    //bumped by every change to the graph or to its vertices and edges so cached snapshots can be thrown out
+    protected int modCount;
+    //the last snapshot made by freeze and the modCount it was made at
+    private GraphSnapshot<T> frozen;
+    private int frozenAt;
+    //shortest path engine over the frozen snapshot
+    private ShortestPath<T> pathEngine;
+    //number of ALT landmarks new path engines are prepared with, 0 for plain Dijkstra
+    private int landmarks;
+    //PageRank engine over the frozen snapshot
+    private PageRank<T> rankEngine;
+    //k shortest paths engine over the frozen snapshot
+    private KShortestPaths<T> kPathsEngine;
+    //hop distance engine over the frozen snapshot
+    private BitsetBFS<T> hopEngine;
 
     /**
-     * The graph constructor initializes the Hashtable that will store all the
+     * The graph constructor initializes the VertexStore that will store all the
      * vertices in the graph
      */
     public Graph(){
-	graph = new Hashtable<Long, Vertex<T>>();
+	graph = new VertexStore<T>();
     }
 
     /**
@@ -31,7 +44,12 @@ public class Graph<T>{
      * @param vertex to be added
      */
     public void addVertex(Long id, Vertex<T> toAdd){
-	graph.put(id, toAdd);
+	Vertex<T> old = graph.put(id, toAdd);
+	if(old != null && old != toAdd && old.owner == this){
+	    old.owner = null;
+	}
+	toAdd.owner = this;
+	modCount++;
     }
 
     /**
@@ -39,7 +57,11 @@ public class Graph<T>{
      * @param id of vertex to be removed
      */
     public void removeVertex(Long id){
-	graph.remove(id);
+	Vertex<T> removed = graph.remove(id);
+	if(removed != null && removed.owner == this){
+	    removed.owner = null;
+	}
+	modCount++;
     }
 
     /**
@@ -80,11 +102,13 @@ public class Graph<T>{
 	Edge<T> edge = new Edge<T>(source, sink);
 	source.addOutgoing(edge);
 	sink.addIncoming(edge);
+	modCount++;
     }
 
     public void addEdge(Edge<T> edge){
 	edge.getSource().addOutgoing(edge);
 	edge.getSink().addIncoming(edge);
+	modCount++;
     }
 
     /**
@@ -94,227 +118,174 @@ public class Graph<T>{
     public void removeEdge(Edge<T> edge){
 	Vertex<T> source = edge.getSource();
 	Vertex<T> sink = edge.getSink();
-	sink.getIncoming().remove(edge);
-	source.getOutgoing().remove(edge);
+	sink.removeIncoming(edge);
+	source.removeOutgoing(edge);
+	modCount++;
+    }
+
+    /**
+     * freeze returns a read-only compressed sparse row snapshot of the graph for analytics. The snapshot is cached
+     * and handed out again until the graph or one of its vertices or edges is changed
+     * @return snapshot of the graph
+     */
+    public synchronized GraphSnapshot<T> freeze(){
+	if(frozen == null || frozenAt != modCount){
+	    frozen = GraphSnapshot.of(graph.values());
+	    frozenAt = modCount;
+	}
+	return frozen;
     }
 
     /**
-     * makeUndirected returns an undirected version of the current graph
+     * makeUndirected returns an undirected version of the current graph, a new graph with one edge each way between
+     * every pair of neighboring vertices. A pair with edges both ways gets the sum of their weights. It is built from
+     * an UndirectedView in linear time; analytics that only need to read the undirected graph can use the view
+     * directly without copying anything
      * @return undirected graph of the current graph
      */
     public Graph<T> makeUndirected(){
-	Graph<T> undirected = new Graph<T>();
-	Collection<Vertex<T>> vertices = graph.values();
-	//for each vertex in the graph if an equivalent vertex doesn't already exist in the undirected graph
-	//make the equivalent vertex and set it to newVertex, else, just make newVertex the equivalent
-	for(Vertex<T> vertex : vertices){
-	    Vertex<T> newVertex;
-	    if(undirected.graph.get(vertex.getId()) == null){
-		    newVertex = new Vertex(vertex.getData(), vertex.getId());
-		    undirected.addVertex(vertex.getId(), newVertex);
-	    }
-	    else{
-		newVertex = undirected.graph.get(vertex.getId());
-	    }
-	    //for each outgoing edge in the original vertex, make the sink vertex if it doesn't already exist
-	    //in undirected
-	    ArrayList<Edge<T>> outgoing = vertex.getOutgoing();
-	    for(int i = 0; i < outgoing.size(); i++){
-		Edge<T> outEdge = outgoing.get(i);
-		Vertex<T> sink = null;
-		if(undirected.graph.get(outEdge.getSink().getId()) == null){
-		    sink = new Vertex(outEdge.getSink().getData(),
-				      outEdge.getSink().getId());
-		    undirected.addVertex(outEdge.getSink().getId(), sink);
-		}
-		else{
-		    sink = undirected.graph.get(outEdge.getSink().getId());
-		}
-		//look through all incoming vertices to see if there is an equivalent incoming edge to the outgoing
-		//edge you are looking at (ex if we are looking at a->b we want to know if b->a already exists)
-		boolean edgeBothWays = false;
-		ArrayList<Edge<T>> incoming = vertex.getIncoming();
-		for(int j = 0; j < incoming.size(); j++){
-		    Edge<T> inEdge = incoming.get(j);
-		    if(inEdge.getSource().getId() == outEdge.getSink().getId()){
-			//you have found a case of edges both ways, make the new edges in the undirected graph with
-			//the weights equal to the sum of the originals
-			Edge<T> toAddOut = new Edge(newVertex, sink,
-						    inEdge.getWeight() + outEdge.getWeight());
-			Edge<T> toAddIn = new Edge(sink, newVertex,
-						    inEdge.getWeight() + outEdge.getWeight());
-			newVertex.addOutgoing(toAddOut);
-			sink.addIncoming(toAddOut);
-			newVertex.addIncoming(toAddIn);
-			sink.addOutgoing(toAddIn);
-			edgeBothWays = true;
-		    }
-		}
-		if(!edgeBothWays){
-		    //you never found an complementary edge so make the new edges in the undirected graph with just
-		    //the weight of the original outgoing edge
-		    Edge<T> toAddOut = new Edge(newVertex, sink, outEdge.getWeight());
-		    Edge<T> toAddIn = new Edge(sink, newVertex, outEdge.getWeight());
-		    newVertex.addOutgoing(toAddOut);
-		    sink.addIncoming(toAddOut);
-		    newVertex.addIncoming(toAddIn);
-		    sink.addOutgoing(toAddIn);
-		}
-	    }
-	}
-	return undirected;
+	return new UndirectedView<T>(freeze()).toGraph();
     }
 
     /**
-     * getShortestPath finds the cheapest path between two given vertices
+     * getShortestPath finds the cheapest path between two given vertices. Queries run against the current snapshot
+     * with their own state so several threads can ask for paths at once
      * @param start and end vertices
-     * @return list of edges on the shortest path between start and end vertices
+     * @return list of edges on the shortest path between start and end vertices, starting with the edge into end,
+     * or null if there is no path
      */
     public ArrayList<Edge<T>> getShortestPath(Vertex<T> start, Vertex<T> end){
-	PriorityQueue<Vertex<T>> unvisited = new PriorityQueue<Vertex<T>>();
-	//add all nodes to the unvisited queue and set the cost for everything but the start to a crazy high
-	//number so that the start will be at the top of the priority queue
-	for(Vertex<T> vertex : graph.values()){
-	    if(vertex.getId() == start.getId()){
-		vertex.setCost(0);
-	    }
-	    else{
-		vertex.setCost(300000);
-	    }
-	    unvisited.add(vertex);
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	ArrayList<Edge<T>> path = shortestPathEngine().getShortestPath(start, end);
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.SHORTEST_PATH.record(System.nanoTime() - startTime);
 	}
-	while(unvisited.size() > 0){
-	    //for all the as yet unvisted neighbors of the lowest cost vertex (the top of the queue), check if it is
-	    //cheaper to get there through the lowest cost vertex than by whatever route they have so far, if it is
-	    //change the cost to the cost through the lowsest cost vertex and set that vertex to the predecessor
-	    Vertex<T> lowestCost = unvisited.poll();
-	    for(Edge<T> edge : lowestCost.getOutgoing()){
-		if(unvisited.contains(edge.getSink())){
-		    if(edge.getSink().getCost() > lowestCost.getCost() + edge.getWeight()){
-			edge.getSink().setCost(lowestCost.getCost() + edge.getWeight());
-			edge.getSink().setPredecessor(edge);
-			//cost has been changed so remove and re-add so the priority will be correct
-			unvisited.remove(edge.getSink());
-			unvisited.add(edge.getSink());
-		    }
-		}
+	return path;
+    }
+
+    /**
+     * shortestPathEngine returns the shortest path engine for the current snapshot, making a new one when the graph
+     * has changed since the last query
+     * @return shortest path engine
+     */
+    protected synchronized ShortestPath<T> shortestPathEngine(){
+	GraphSnapshot<T> snapshot = freeze();
+	if(pathEngine == null || pathEngine.snapshot != snapshot){
+	    pathEngine = new ShortestPath<T>(snapshot);
+	    if(landmarks > 0){
+		pathEngine.prepareLandmarks(landmarks);
 	    }
 	}
-	ArrayList<Edge<T>> path = new ArrayList<Edge<T>>();
-	Vertex<T> current = graph.get(end.getId());
-	//starting from the end get each vertex's predecessor until you get to the start to get the list of
-	//all the edges passed through on the shortest path
-	while(!current.equals(graph.get(start.getId()))){
-	    path.add(current.getPredecessor());
-	    current = current.getPredecessor().getSource();
+	return pathEngine;
+    }
+
+    /**
+     * getShortestPathBidirectional finds the cheapest path between two given vertices by searching from both ends
+     * at once, which explores far less of the graph for a single pair
+     * @param start and end vertices
+     * @return list of edges on the shortest path, starting with the edge into end, or null if there is no path
+     */
+    public ArrayList<Edge<T>> getShortestPathBidirectional(Vertex<T> start, Vertex<T> end){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	ArrayList<Edge<T>> path = shortestPathEngine().getShortestPathBidirectional(start, end);
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.SHORTEST_PATH_BIDIRECTIONAL.record(System.nanoTime() - startTime);
 	}
 	return path;
     }
+
+    /**
+     * prepareLandmarks turns on landmark (ALT) guided searches for getShortestPath. The landmark distances are
+     * computed now and again whenever a path is asked for after the graph has changed
+     * @param k number of landmarks, 0 to go back to plain Dijkstra
+     */
+    public synchronized void prepareLandmarks(int k){
+	landmarks = k;
+	pathEngine = null;
+	if(k > 0){
+	    shortestPathEngine();
+	}
+    }
     
     /**
-     * shortestPaths returns a list of all the shortest paths between two vertices
+     * shortestPaths returns a list of all the cheapest simple paths between two vertices. Each cheaper path found
+     * lowers the weight limit of the search, so costlier partial paths are dropped early
      * @param start and end vertices
      * @return a list of lists of all the edges in all the shortest paths between the vertices
      */
     protected ArrayList<ArrayList<Edge<T>> > shortestPaths(Vertex<T> start, Vertex<T> end){
 	ArrayList<ArrayList<Edge<T>> > shortest = new ArrayList<ArrayList<Edge<T>> >();
-	Hashtable<ArrayList<Edge<T>> , Integer> paths = getAllPaths(start, end);
-	Enumeration<ArrayList<Edge<T>> > keys = paths.keys();
-	//make current min really big so that all costs will be smaller
-	int currentMin = 30000;
-	//for each path between the vertices check the cost, if it is smaller than the current minimum cost path
-	//clear the previous shortest paths and make this new path the new shortest, if it is equal add this path
-	//to the list of shortest paths
-	while(keys.hasMoreElements()){
-	    ArrayList<Edge<T>> currentPath = keys.nextElement();
-	    if(paths.get(currentPath) != null){
-		if(paths.get(currentPath) < currentMin){
-		    shortest.clear();
-		    shortest.add(currentPath);
-		    currentMin = paths.get(currentPath);
-		}
-		else if(paths.get(currentPath) == currentMin){
-		    shortest.add(currentPath);
-		}
+	PathIterator<T> paths = getAllPaths(start, end);
+	double currentMin = Double.POSITIVE_INFINITY;
+	while(paths.hasNext()){
+	    ArrayList<Edge<T>> currentPath = paths.next();
+	    if(paths.getCost() < currentMin){
+		shortest.clear();
+		currentMin = paths.getCost();
+		paths.setMaxWeight(currentMin);
 	    }
+	    shortest.add(currentPath);
 	}
 	return shortest;
     }
 
     /**
-     * getAllPaths gets every path between two given vertices and its cost
+     * getAllPaths returns an iterator over every simple path between two given vertices. Paths are found one at a
+     * time as the iterator is used, and getCost on the iterator gives the total weight of each
      * @param start and end verices
-     * @return hashtable mapping each path to its cost
+     * @return iterator over the paths, each a list of edges from start to end
      */
-    protected Hashtable<ArrayList<Edge<T>> , Integer> getAllPaths(Vertex<T> start, Vertex<T> end){
-	Hashtable<ArrayList<Edge<T>> , Integer> paths = new Hashtable<ArrayList<Edge<T>> , Integer>();
-	LinkedList<Vertex<T>> unvisited = new LinkedList<Vertex<T>>();
-	for(Vertex<T> vertex : graph.values()){
-	    unvisited.add(vertex);
-	}
-	ArrayList<Edge<T>> currentPath = new ArrayList<Edge<T>>();
-	paths = getAllPathsHelper(start, end, unvisited, currentPath, paths, 0);
-	return paths;
+    public PathIterator<T> getAllPaths(Vertex<T> start, Vertex<T> end){
+	return new PathIterator<T>(freeze(), start.getId(), end.getId());
     }
 
     /**
-     * getAllPathsHelper recursively finds all the paths between two given vertices and their costs
+     * getPaths returns an iterator over the simple paths between two given vertices that stay within limits
      * @param start and end vertices
-     * @param unvisited - the list of all vertices as yet unvisted in the current path
-     * @param currentPath - the current path between the two vertices
-     * @param paths - hash table mapping all paths so far between the two vertices to their costs
-     * @param count - the current cost of the current path
-     * @return the hashtable of all the paths so far
-     */
-    protected Hashtable<ArrayList<Edge<T>> , Integer> getAllPathsHelper(Vertex<T> current, Vertex<T> end,
-									LinkedList<Vertex<T>> unvisited,
-									ArrayList<Edge<T>> currentPath,
-									Hashtable<ArrayList<Edge<T>> , Integer> paths,
-									int count){
-	unvisited.remove(current); 
-        //base case
-        if (current.equals(end)){
-            paths.put(new ArrayList(currentPath), new Integer(count));
-            //once you reach the end of the path, this vertex can be used in other paths 
-            unvisited.add(current); 
-            return paths; 
-        } 
-        //for each neighbor if it hasn't already been visited on this path, start traversing down it
-        for (Edge<T> edge : current.getOutgoing()){ 
-            if (unvisited.contains(edge.getSink())){
-                //add the edge to the list and up the current path's count
-                currentPath.add(edge);
-		count += edge.getWeight();
-                getAllPathsHelper(edge.getSink(), end, unvisited, currentPath, paths, count); 
-                  
-                //you have finished this version of the path so remove the egde and subtract it's weight 
-                currentPath.remove(edge);
-		count -= edge.getWeight();
-            } 
-        } 
-          
-        //you have finished this node, so it can be used again in other paths 
-	unvisited.add(current);
-	return paths;
-    }
-
-    /**
-     * isSinglyConnected compares the shortest and longest paths between each vertex in the graph to determine whether
-     * or not the graph is singly connected (there is at most one simple path from u to v for all vertices u and v in 
-     * the set of Vertices)
-     * @return true if the shortest and longest path between every vertex are the same and the graph is singly connected
-     * and false otherwise
+     * @param maxDepth most edges on a path
+     * @param maxPaths most paths to hand out
+     * @param maxWeight largest total weight of a path, which assumes no edge weight is negative
+     * @return iterator over the paths, each a list of edges from start to end
      */
-    public boolean isSinglyConnected(){
-	for(Vertex<T> vertex1 : graph.values()){
-	    for(Vertex<T> vertex2 : graph.values()){
-		if(getAllPaths(vertex1, vertex2).values().size() > 1){
-		    return false;
-		}
+    public PathIterator<T> getPaths(Vertex<T> start, Vertex<T> end, int maxDepth, long maxPaths, double maxWeight){
+	return new PathIterator<T>(freeze(), start.getId(), end.getId(), maxDepth, maxPaths, maxWeight);
+    }
+
+    /**
+     * kShortestPaths returns the k cheapest simple paths between two given vertices with Yen's algorithm, which
+     * takes a number of Dijkstra searches proportional to k times the path length rather than listing every path
+     * @param start and end vertices
+     * @param k most paths to return
+     * @return paths with their costs, cheapest first, empty if end cannot be reached
+     */
+    public ArrayList<KShortestPaths.Path<T>> kShortestPaths(Vertex<T> start, Vertex<T> end, int k){
+	KShortestPaths<T> engine;
+	synchronized(this){
+	    GraphSnapshot<T> snapshot = freeze();
+	    if(kPathsEngine == null || kPathsEngine.snapshot != snapshot){
+		kPathsEngine = new KShortestPaths<T>(snapshot);
 	    }
+	    engine = kPathsEngine;
 	}
-	//you made it through all the vertices without finding more than one path between any two
-	return true;
+	return engine.find(start.getId(), end.getId(), k);
+    }
+
+    /**
+     * isSinglyConnected checks whether there is at most one simple path from u to v for all vertices u and v in the
+     * set of Vertices
+     * @return true if the graph is singly connected and false otherwise
+     */
+    public boolean isSinglyConnected(){
+	return singlyConnectedWitness() == null;
+    }
+
+    /**
+     * singlyConnectedWitness looks for a pair of vertices with more than one simple path between them using one
+     * depth first search per source, run in parallel
+     * @return the pair and two different paths between them, or null if the graph is singly connected
+     */
+    public SinglyConnected.Witness<T> singlyConnectedWitness(){
+	return new SinglyConnected<T>(freeze()).find();
     }
 
     /**
@@ -324,178 +295,255 @@ public class Graph<T>{
      * @return the betweenness centrality of the given vertex
      */
     public float betweennessCentrality(Vertex<T> vertex){
-	float totalPaths = 0;
-	float containsVertex = 0;
-	for(Vertex<T> vertex1 : graph.values()){
-	    for(Vertex<T> vertex2 : graph.values()){
-		if(!vertex1.equals(vertex2)){
-		    ArrayList<ArrayList<Edge<T>> > paths = shortestPaths(vertex1, vertex2);
-		    for(ArrayList<Edge<T>> path : paths){
-			totalPaths++;
-			for(Edge<T> edge : path){
-			    if(!edge.getSource().equals(vertex1) && !edge.getSource().equals(vertex2) &&
-			       edge.getSource().equals(vertex)){
-				containsVertex++;
-			    }
-			}
-		    }
-		}
-	    }
+	return betweennessCentralityAll().get(vertex.getId());
+    }
+
+    /**
+     * betweennessCentralityAll finds the betweenness centrality of every vertex in one pass using edge weights as
+     * path costs
+     * @return hashtable mapping each vertex id to its betweenness centrality
+     */
+    public Hashtable<Long, Float> betweennessCentralityAll(){
+	return betweennessCentralityAll(true);
+    }
+
+    /**
+     * betweennessCentralityAll finds the betweenness centrality of every vertex in one pass with Brandes' algorithm
+     * @param weighted true to use edge weights as path costs and false to count edges
+     * @return hashtable mapping each vertex id to its betweenness centrality
+     */
+    public Hashtable<Long, Float> betweennessCentralityAll(boolean weighted){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	GraphSnapshot<T> snapshot = freeze();
+	float[] scores = new Betweenness<T>(snapshot, weighted).exact();
+	Hashtable<Long, Float> centrality = new Hashtable<Long, Float>();
+	for(int i = 0; i < scores.length; i++){
+	    centrality.put(snapshot.idOf(i), scores[i]);
+	}
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.BETWEENNESS.record(System.nanoTime() - startTime);
 	}
-	return containsVertex/totalPaths;
+	return centrality;
     }
     
     /**
-     * getMinSpanningTree returns the minimum spanning tree, the subset of edges with the minimum
-     * edge weight sum such that for every pair of vertices v and w in there is one and only one 
-     * path from v to w
-     * @return list of edges representing the minimum spanning tree of the graph
+     * approximateBetweennessCentrality estimates the normalized betweenness centrality of every vertex by sampling
+     * source vertices in parallel, to within epsilon of the true value with probability 1 - delta
+     * @param epsilon largest allowed error
+     * @param delta allowed probability of a larger error
+     * @return estimated scores with their error bound
      */
-    public ArrayList<Edge<T>> getMinSpanningTree(){
-	return getSpanningTree(true);
+    public Betweenness.Estimate approximateBetweennessCentrality(double epsilon, double delta){
+	return new Betweenness<T>(freeze(), true).approximate(epsilon, delta, System.nanoTime());
     }
 
     /**
-     * getMaxSpanningTree returns the maximum spanning tree, the subset of edges with the maximum
-     * edge weight sum such that for every pair of vertices v and w in there is one and only one 
-     * path from v to w
-     * @return list of edges representing the maximum spanning tree of the graph
+     * approximateBetweennessCentrality estimates the normalized betweenness centrality of every vertex by sampling
+     * source vertices in parallel for as long as a time budget allows
+     * @param millis time budget in milliseconds
+     * @param delta allowed probability that the reported error bound is exceeded
+     * @return estimated scores with their error bound
      */
-    public ArrayList<Edge<T>> getMaxSpanningTree(){
-	return getSpanningTree(false);
+    public Betweenness.Estimate approximateBetweennessCentrality(long millis, double delta){
+	return new Betweenness<T>(freeze(), true).approximate(millis, delta, System.nanoTime());
     }
 
     /**
-     * getSpanningTree returns either the minimum or maximum spanning tree of a tree depending on the boolean passed in
-     * @param boolean which is true if you want the minimum spanning tree and false if you want max
-     * @return list of edges representing the minimum spanning tree of the graph if true and maximum if false
+     * weaklyConnectedComponents labels the parts of the graph that are connected when edge directions are ignored,
+     * using a lock-free union-find on several threads
+     * @return the component of every vertex
      */
-    protected ArrayList<Edge<T>> getSpanningTree(boolean min){
-	PriorityQueue<Vertex<T>> vertices;
-	//if you want a minimum spanning tree create a minimum priority queue else create a max queue
-	if(min){
-	    vertices = new PriorityQueue<Vertex<T>>();
-	}
-	else{
-	    vertices = new PriorityQueue<Vertex<T>>(Collections.reverseOrder());
+    public Components.Labels weaklyConnectedComponents(){
+	return new Components<T>(freeze()).weak();
+    }
+
+    /**
+     * stronglyConnectedComponents labels the largest sets of vertices that can all reach each other, without
+     * recursion so deep graphs cannot overflow the stack
+     * @return the component of every vertex
+     */
+    public Components.Labels stronglyConnectedComponents(){
+	return new Components<T>(freeze()).strong();
+    }
+
+    /**
+     * countTriangles counts the triangles through every vertex with edge directions ignored, in parallel and
+     * without building the undirected graph
+     * @return triangle counts with the local and global clustering coefficients
+     */
+    public Triangles.Counts countTriangles(){
+	return new Triangles<T>(freeze()).count();
+    }
+
+    /**
+     * clusteringCoefficients finds the local clustering coefficient of every vertex, the share of pairs of its
+     * neighbors that are neighbors too, with edge directions ignored
+     * @return hashtable mapping each vertex id to its coefficient
+     */
+    public Hashtable<Long, Double> clusteringCoefficients(){
+	GraphSnapshot<T> snapshot = freeze();
+	double[] clustering = new Triangles<T>(snapshot).count().getLocalClustering();
+	Hashtable<Long, Double> result = new Hashtable<Long, Double>();
+	for(int i = 0; i < clustering.length; i++){
+	    result.put(snapshot.idOf(i), clustering[i]);
 	}
-	Vertex<T> start = null;
-	//add all nodes to the vertices queue and for min set the cost for everything but the start, which is
-	//arbitrarily chosen, to a crazy high number and for max 0 so that the start will be at the top of the
-	//priority queue
-	for(Vertex<T> vertex : graph.values()){
-	    if(start == null){
-		start = vertex;
-		if(min){
-		    start.setCost(0);
-		}
-		else{
-		    start.setCost(300000);
-		}
-	    }
-	    else{
-		if(min){
-		    vertex.setCost(300000);
-		}
-		else{
-		    vertex.setCost(0);
-		}
-	    }
-	    vertex.setPredecessor(null);
-	    vertices.add(vertex);
+	return result;
+    }
+
+    /**
+     * pageRank finds the PageRank of every vertex, using edge weights as transition weights, with damping 0.85
+     * @return hashtable mapping each vertex id to its rank, the ranks summing to 1
+     */
+    public Hashtable<Long, Double> pageRank(){
+	return pageRank(PageRank.DAMPING, PageRank.TOLERANCE, PageRank.MAX_ITERATIONS);
+    }
+
+    /**
+     * pageRank finds the PageRank of every vertex by parallel power iteration, using edge weights as transition
+     * weights
+     * @param damping probability of following an edge rather than jumping to a random vertex
+     * @param tolerance stop once the ranks change by less than this in total
+     * @param maxIterations most iterations to run
+     * @return hashtable mapping each vertex id to its rank, the ranks summing to 1
+     */
+    public Hashtable<Long, Double> pageRank(double damping, double tolerance, int maxIterations){
+	PageRank<T> engine = pageRankEngine();
+	double[] ranks = engine.rank(damping, tolerance, maxIterations, ForkJoinPool.commonPool());
+	Hashtable<Long, Double> result = new Hashtable<Long, Double>();
+	for(int i = 0; i < ranks.length; i++){
+	    result.put(engine.snapshot.idOf(i), ranks[i]);
 	}
-	while(vertices.size() > 0){
-	    //for all the as yet unvisted neighbors of the top of the queue, check if it is cheaper/more expensive
-	    //(for min/max respectively) to get there through the top vertex than by whatever route they have so far,
-	    //if it is change the cost to the cost through the top vertex and set that vertex to the predecessor
-	    Vertex<T> top = vertices.poll();
-	    for(Edge<T> edge : top.getOutgoing()){
-		if(vertices.contains(edge.getSink())){
-		    if(min){
-			if(edge.getSink().getCost() > edge.getWeight()){
-			    edge.getSink().setCost(edge.getWeight());
-			    edge.getSink().setPredecessor(edge);
-			    //cost has been changed so remove and re-add so the priority will be correct
-			    vertices.remove(edge.getSink());
-			    vertices.add(edge.getSink());
-			}
-		    }
-		    else{
-			if(edge.getSink().getCost() < edge.getWeight()){
-			    edge.getSink().setCost(edge.getWeight());
-			    edge.getSink().setPredecessor(edge);
-			    //cost has been changed so remove and re-add so the priority will be correct
-			    vertices.remove(edge.getSink());
-			    vertices.add(edge.getSink());
-			}
-		    }
-		}
-	    }
+	return result;
+    }
+
+    /**
+     * personalizedPageRank finds the vertices most relevant to a seed vertex, ranked by PageRank with every jump
+     * going back to the seed. Only the seed's neighborhood is looked at, so this is quick on any size of graph
+     * @param seed id of the seed vertex
+     * @param k most vertices to return
+     * @return the k best ranked vertices with their scores, or null if there is no such seed
+     */
+    public PageRank.Result personalizedPageRank(long seed, int k){
+	return pageRankEngine().personalized(seed, k);
+    }
+
+    /**
+     * pageRankEngine returns the PageRank engine for the current snapshot, making a new one when the graph has
+     * changed
+     * @return PageRank engine
+     */
+    protected synchronized PageRank<T> pageRankEngine(){
+	GraphSnapshot<T> snapshot = freeze();
+	if(rankEngine == null || rankEngine.snapshot != snapshot){
+	    rankEngine = new PageRank<T>(snapshot);
 	}
-	//for all vertices in the graph except the start of the tree, add their predicessor to the list of MST edges
-	ArrayList<Edge<T>> edgeTree = new ArrayList<Edge<T>>();
-	for(Vertex<T> current : graph.values()){
-	    if(!current.equals(start)){
-		edgeTree.add(current.getPredecessor());
-	    }
+	return rankEngine;
+    }
+
+    /**
+     * getMinSpanningTree returns a minimum spanning forest, the subset of edges with the minimum
+     * edge weight sum such that for every pair of connected vertices v and w there is one and only
+     * one path from v to w. Edge directions are ignored and every component gets its own tree
+     * @return list of edges representing the minimum spanning forest of the graph
+     */
+    public ArrayList<Edge<T>> getMinSpanningTree(){
+	return spanningTree(true);
+    }
+
+    /**
+     * getMaxSpanningTree returns a maximum spanning forest, the subset of edges with the maximum
+     * edge weight sum such that for every pair of connected vertices v and w there is one and only
+     * one path from v to w. Edge directions are ignored and every component gets its own tree
+     * @return list of edges representing the maximum spanning forest of the graph
+     */
+    public ArrayList<Edge<T>> getMaxSpanningTree(){
+	return spanningTree(false);
+    }
+
+    /**
+     * spanningTree finds a minimum or maximum spanning forest of the current snapshot
+     * @param min true for a minimum spanning forest and false for a maximum one
+     * @return list of the forest's edges
+     */
+    protected ArrayList<Edge<T>> spanningTree(boolean min){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	ArrayList<Edge<T>> tree = new SpanningForest<T>(freeze()).edges(min);
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.SPANNING_TREE.record(System.nanoTime() - startTime);
 	}
-	return edgeTree;
+	return tree;
     }
 
     /**
-     * graphDiameter returns the longest shortest path between any two vertices of the graph
+     * graphDiameter returns the longest shortest path, in edges, between any two connected vertices of the graph
      * @return the diameter of the graph
      */
     public int graphDiameter(){
-	int maxSteps = 0;
-	for(Vertex<T> vertex1 : graph.values()){
-	    for(Vertex<T> vertex2 : graph.values()){
-		//check every possible path between two vertices
-		//if it is longer than the current max, update the current max
-		int path = shortestPathSteps(vertex1, vertex2);
-		if(path > maxSteps){
-		    maxSteps = path;
-		}
-	    }
+	return diameterAndRadius().getDiameter();
+    }
+
+    /**
+     * diameterAndRadius returns the diameter, the radius and a pair of vertices as far apart as the diameter. Graphs
+     * where every edge has a reverse edge need only a few breadth first searches per component, others get one
+     * search from every vertex in parallel
+     * @return diameter, radius and the ids of the pair realising the diameter
+     */
+    public Diameter.Result diameterAndRadius(){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	Diameter.Result result = new Diameter<T>(freeze()).compute();
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.DIAMETER.record(System.nanoTime() - startTime);
 	}
-	return maxSteps;
+	return result;
     }
 
     /**
      * shortestPathSteps returns the shortest path between two given vertices based on the number of edges traversed
      * @param start and end vertices
-     * @return the length of the shortest path between the given vertices
+     * @return the length of the shortest path between the given vertices, or -1 if there is none
      */
     protected int shortestPathSteps(Vertex<T> start, Vertex<T> end){
-	int steps = 0;
-	LinkedList<Vertex<T>> queue = new LinkedList<Vertex<T>>();
-	LinkedList<Vertex<T>> unvisited = new LinkedList<Vertex<T>>();
-	for(Vertex<T> vertex : graph.values()){
-	    unvisited.add(vertex);
-	}
-	unvisited.remove(start);
-	queue.add(start);
-	boolean found = false;
-	while(queue.size() > 0 && !found){
-	    Vertex<T> vertex = queue.poll();
-	    for(Edge<T> outEdge : vertex.getOutgoing()){
-		if(unvisited.contains(outEdge.getSink())){
-		    unvisited.remove(outEdge.getSink());
-		    queue.add(outEdge.getSink());
-		    outEdge.getSink().setPredecessor(outEdge);
-		}
-		if(outEdge.getSink().equals(end)){
-		    found = true;
-		    break;
-		}
-	    }
+	return hopDistance(start.getId(), end.getId());
+    }
+
+    /**
+     * hopDistance returns the fewest edges on a path between two vertices, ignoring weights. Searches near the
+     * start cost only what they reach, and ones that spread far are run in parallel
+     * @param startId id of the first vertex
+     * @param endId id of the last vertex
+     * @return number of edges, or -1 if either id is not in the graph or there is no path
+     */
+    public int hopDistance(long startId, long endId){
+	BitsetBFS<T> engine = hopEngine();
+	int start = engine.snapshot.indexOf(startId);
+	int end = engine.snapshot.indexOf(endId);
+	if(start < 0 || end < 0){
+	    return -1;
 	}
-	Vertex<T> current = graph.get(end.getId());
-	while(!current.equals(graph.get(start.getId()))){
-	    current = current.getPredecessor().getSource();
-	    steps++;
+	return engine.distance(start, end);
+    }
+
+    /**
+     * isReachable returns whether there is a path from one vertex to another
+     * @param startId id of the first vertex
+     * @param endId id of the last vertex
+     * @return true if both ids are in the graph and there is a path
+     */
+    public boolean isReachable(long startId, long endId){
+	return hopDistance(startId, endId) >= 0;
+    }
+
+    /**
+     * hopEngine returns the hop distance engine for the current snapshot, making a new one when the graph has
+     * changed
+     * @return breadth first search engine
+     */
+    protected synchronized BitsetBFS<T> hopEngine(){
+	GraphSnapshot<T> snapshot = freeze();
+	if(hopEngine == null || hopEngine.snapshot != snapshot){
+	    hopEngine = new BitsetBFS<T>(snapshot);
 	}
-	return steps;
+	return hopEngine;
     }
 
     /**
@@ -0,0 +1,346 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The GraphGenerator class writes synthetic social graphs in the records format, so loaders and analytics can be
+ * measured at any scale. Every account gets the id FIRST_ID plus its number and a made up name, follows the accounts
+ * the model picks for it and likes some of them a few times.
+ *
+ * Output is a pure function of the model's parameters and the seed. Randomness comes from hashing the seed with the
+ * account or edge number rather than from one running generator, so each record is worked out on its own and
+ * nothing but the current record is held in memory. That keeps files of 10^8 edges within reach of a small heap
+ */
+
+public abstract class GraphGenerator{
+
+    //id of account 0, so ids look like the ones in real records files
+    public static final long FIRST_ID = 1000000L;
+
+    protected final long seed;
+    //percent of follows that also get likes
+    protected int likePercent;
+    //follow targets of the current account
+    protected int[] follows;
+
+    /**
+     * the GraphGenerator constructor takes the seed every random choice is made from
+     * @param seed
+     */
+    protected GraphGenerator(long seed){
+	this.seed = seed;
+	likePercent = 20;
+	follows = new int[16];
+    }
+
+    /**
+     * vertexCount returns the number of accounts the model makes
+     * @return number of accounts
+     */
+    public abstract int vertexCount();
+
+    /**
+     * generate picks the accounts an account follows, writing them to the start of follows. Duplicates and self
+     * follows are allowed here and dropped when the record is written
+     * @param v account number
+     * @return number of follows written
+     */
+    protected abstract int generate(int v);
+
+    /**
+     * setLikePercent sets the percent of follows that also get between one and three likes
+     * @param likePercent from 0 to 100
+     */
+    public void setLikePercent(int likePercent){
+	this.likePercent = likePercent;
+    }
+
+    /**
+     * write writes every account's record to a file
+     * @param fileName of the records file
+     * @return number of follow edges written
+     * @throws IOException if the file cannot be written
+     */
+    public long write(String fileName) throws IOException{
+	OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+	try{
+	    return write(out);
+	}
+	finally{
+	    out.close();
+	}
+    }
+
+    /**
+     * write writes every account's record to a stream
+     * @param out stream to write to
+     * @return number of follow edges written
+     * @throws IOException if the stream cannot be written
+     */
+    public long write(OutputStream out) throws IOException{
+	int n = vertexCount();
+	long edges = 0;
+	StringBuilder record = new StringBuilder();
+	for(int v = 0; v < n; v++){
+	    int count = distinct(v, generate(v));
+	    edges += count;
+	    record.setLength(0);
+	    record.append(FIRST_ID + v).append('\n');
+	    record.append("Account ").append(v).append('\n');
+	    for(int i = 0; i < count; i++){
+		if(i > 0){
+		    record.append(',');
+		}
+		record.append(FIRST_ID + follows[i]);
+	    }
+	    record.append('\n');
+	    boolean first = true;
+	    for(int i = 0; i < count; i++){
+		long random = mix(seed ^ mix(((long) v << 32) | follows[i]));
+		if(Long.remainderUnsigned(random, 100) >= likePercent){
+		    continue;
+		}
+		int likes = 1 + (int) ((random >>> 40) % 3);
+		for(int like = 0; like < likes; like++){
+		    if(!first){
+			record.append(',');
+		    }
+		    record.append(FIRST_ID + follows[i]);
+		    first = false;
+		}
+	    }
+	    record.append('\n');
+	    out.write(record.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	return edges;
+    }
+
+    /**
+     * distinct sorts an account's follows and drops duplicates and self follows
+     * @param v account number
+     * @param count number of follows generated
+     * @return number of follows left
+     */
+    protected int distinct(int v, int count){
+	Arrays.sort(follows, 0, count);
+	int kept = 0;
+	for(int i = 0; i < count; i++){
+	    if(follows[i] != v && (kept == 0 || follows[kept - 1] != follows[i])){
+		follows[kept] = follows[i];
+		kept++;
+	    }
+	}
+	return kept;
+    }
+
+    /**
+     * follow appends a target to follows, growing it if needed
+     * @param count number of follows so far
+     * @param target account number
+     * @return new number of follows
+     */
+    protected int follow(int count, int target){
+	if(count == follows.length){
+	    follows = Arrays.copyOf(follows, count * 2);
+	}
+	follows[count] = target;
+	return count + 1;
+    }
+
+    /**
+     * mix scrambles a long with the splitmix64 finalizer, so nearby inputs give unrelated outputs
+     * @param x
+     * @return scrambled x
+     */
+    protected static long mix(long x){
+	x += 0x9E3779B97F4A7C15L;
+	x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+	x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+	return x ^ (x >>> 31);
+    }
+
+    /**
+     * uniform turns a scrambled long into a double in [0, 1)
+     * @param random scrambled long
+     * @return double
+     */
+    protected static double uniform(long random){
+	return (random >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * rmat returns an R-MAT generator with the usual skew of a = 0.57, b = 0.19 and c = 0.19
+     * @param scale log2 of the number of accounts
+     * @param edges expected number of follows before duplicates are dropped
+     * @param seed
+     * @return generator
+     */
+    public static GraphGenerator rmat(int scale, long edges, long seed){
+	return new RMat(scale, edges, 0.57, 0.19, 0.19, seed);
+    }
+
+    /**
+     * preferentialAttachment returns a Barabasi-Albert generator
+     * @param vertices number of accounts
+     * @param perVertex number of older accounts each new account follows
+     * @param seed
+     * @return generator
+     */
+    public static GraphGenerator preferentialAttachment(int vertices, int perVertex, long seed){
+	return new PreferentialAttachment(vertices, perVertex, seed);
+    }
+
+    /**
+     * The RMat class makes graphs with R-MAT: each edge falls in one quadrant of the adjacency matrix with
+     * probabilities a, b, c and d, then in one quadrant of that, down to a single cell. The source bits of an edge
+     * do not depend on its target bits, so each account's out degree is worked out from its own bits and its targets
+     * are drawn from the quadrant probabilities given those bits. That writes accounts in order without collecting
+     * and sorting every edge first
+     */
+    public static class RMat extends GraphGenerator{
+
+	protected final int scale;
+	protected final long edges;
+	protected final double a;
+	protected final double b;
+	protected final double c;
+	protected final double d;
+
+	/**
+	 * the RMat constructor takes the size of the graph and the quadrant probabilities, d being what is left
+	 * @param scale log2 of the number of accounts, at most 30
+	 * @param edges expected number of follows before duplicates are dropped
+	 * @param a b and c quadrant probabilities
+	 * @param seed
+	 */
+	public RMat(int scale, long edges, double a, double b, double c, long seed){
+	    super(seed);
+	    if(scale < 1 || scale > 30 || a + b + c >= 1){
+		throw new IllegalArgumentException("bad R-MAT parameters");
+	    }
+	    this.scale = scale;
+	    this.edges = edges;
+	    this.a = a;
+	    this.b = b;
+	    this.c = c;
+	    this.d = 1 - a - b - c;
+	}
+
+	public int vertexCount(){
+	    return 1 << scale;
+	}
+
+	protected int generate(int v){
+	    //chance of an edge starting at v, from the source bit picked at every level
+	    double share = 1;
+	    for(int level = scale - 1; level >= 0; level--){
+		share *= ((v >>> level) & 1) == 0 ? a + b : c + d;
+	    }
+	    double expected = share * edges;
+	    long random = mix(seed ^ v);
+	    int degree = (int) expected;
+	    if(uniform(random) < expected - degree){
+		degree++;
+	    }
+	    int count = 0;
+	    for(int e = 0; e < degree; e++){
+		long bits = mix(random + e);
+		int target = 0;
+		for(int level = scale - 1; level >= 0; level--){
+		    bits = mix(bits);
+		    double left = ((v >>> level) & 1) == 0 ? a / (a + b) : c / (c + d);
+		    if(uniform(bits) >= left){
+			target |= 1 << level;
+		    }
+		}
+		count = follow(count, target);
+	    }
+	    return count;
+	}
+    }
+
+    /**
+     * The PreferentialAttachment class makes Barabasi-Albert graphs: account i follows perVertex earlier accounts,
+     * each picked with probability proportional to its degree so far. Picking a uniformly random end of an earlier
+     * edge does exactly that. Batagelj and Brandes keep every edge end in an array for this; here the end at position
+     * k is recomputed when needed, since it is either the source of its edge or, for a target, the end at a random
+     * earlier position drawn from the seed and k. Following that chain takes O(log k) steps on average and no memory
+     */
+    public static class PreferentialAttachment extends GraphGenerator{
+
+	protected final int vertices;
+	protected final int perVertex;
+
+	/**
+	 * the PreferentialAttachment constructor takes the size of the graph
+	 * @param vertices number of accounts
+	 * @param perVertex number of older accounts each new account follows
+	 * @param seed
+	 */
+	public PreferentialAttachment(int vertices, int perVertex, long seed){
+	    super(seed);
+	    if(vertices < 1 || perVertex < 1){
+		throw new IllegalArgumentException("bad preferential attachment parameters");
+	    }
+	    this.vertices = vertices;
+	    this.perVertex = perVertex;
+	}
+
+	public int vertexCount(){
+	    return vertices;
+	}
+
+	protected int generate(int v){
+	    int count = 0;
+	    if(v == 0){
+		return 0;
+	    }
+	    for(int i = 0; i < perVertex; i++){
+		long edge = (long) v * perVertex + i;
+		count = follow(count, end(2 * edge + 1));
+	    }
+	    return count;
+	}
+
+	/**
+	 * end returns the account at one end of an edge. Position 2e is the source of edge e and position 2e + 1 its
+	 * target
+	 * @param k position
+	 * @return account number
+	 */
+	protected int end(long k){
+	    //account 0 follows nobody, so its positions all stand for account 0 itself and give the chain a start
+	    while((k & 1) == 1 && k >= 2L * perVertex){
+		k = Long.remainderUnsigned(mix(seed ^ k), k);
+	    }
+	    if(k < 2L * perVertex){
+		return 0;
+	    }
+	    return (int) (k / 2 / perVertex);
+	}
+    }
+
+    public static void main(String[] args) throws IOException{
+	if(args.length < 4){
+	    System.out.println("usage: java GraphGenerator rmat <scale> <edges> <file> [seed]");
+	    System.out.println("       java GraphGenerator pa <accounts> <follows per account> <file> [seed]");
+	    return;
+	}
+	long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+	GraphGenerator generator;
+	if(args[0].equals("rmat")){
+	    generator = rmat(Integer.parseInt(args[1]), Long.parseLong(args[2]), seed);
+	}
+	else{
+	    generator = preferentialAttachment(Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+	}
+	long start = System.nanoTime();
+	long edges = generator.write(args[3]);
+	System.out.println("wrote " + generator.vertexCount() + " accounts and " + edges + " follows in " +
+			   (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+}
@@ -0,0 +1,326 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The GraphMetrics class collects metrics for Graph and SocialGraph: a LatencyHistogram per query type, counters of
+ * the vertices settled, edges relaxed and heap operations done by shortest path searches, of the edges spanning
+ * forests sort and filter away, and of what loads read. They can be pulled with snapshot or watched over JMX once
+ * register has been called.
+ *
+ * Counters are LongAdders, and searches count into locals and add them once at the end, so recording costs little
+ * even with many query threads. Starting the JVM with -Dgraph.metrics=false makes ENABLED false. Every call site
+ * checks ENABLED, a static final, before timing or counting, so the JIT drops that code entirely
+ */
+
+public class GraphMetrics implements GraphMetricsMXBean{
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("graph.metrics"));
+    public static final String OBJECT_NAME = "socialGraph:type=GraphMetrics";
+
+    public static final LatencyHistogram SHORTEST_PATH = new LatencyHistogram();
+    public static final LatencyHistogram SHORTEST_PATH_BIDIRECTIONAL = new LatencyHistogram();
+    public static final LatencyHistogram GET_FOLLOWS = new LatencyHistogram();
+    public static final LatencyHistogram GET_FOLLOWERS = new LatencyHistogram();
+    public static final LatencyHistogram GET_LIKES = new LatencyHistogram();
+    public static final LatencyHistogram SPANNING_TREE = new LatencyHistogram();
+    public static final LatencyHistogram BETWEENNESS = new LatencyHistogram();
+    public static final LatencyHistogram DIAMETER = new LatencyHistogram();
+    public static final LatencyHistogram LOAD = new LatencyHistogram();
+
+    //every histogram by the name it is reported under
+    protected static final LinkedHashMap<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+
+    protected static final LongAdder searches = new LongAdder();
+    protected static final LongAdder verticesSettled = new LongAdder();
+    protected static final LongAdder edgesRelaxed = new LongAdder();
+    protected static final LongAdder heapOperations = new LongAdder();
+    protected static final LongAdder spanningForests = new LongAdder();
+    protected static final LongAdder spanningEdgesSorted = new LongAdder();
+    protected static final LongAdder spanningEdgesFiltered = new LongAdder();
+    protected static final LongAdder recordsLoaded = new LongAdder();
+    protected static final LongAdder edgesLoaded = new LongAdder();
+    protected static final LongAdder bytesLoaded = new LongAdder();
+    protected static final LongAdder loadNanos = new LongAdder();
+
+    protected static final GraphMetrics instance = new GraphMetrics();
+
+    static{
+	latencies.put("getShortestPath", SHORTEST_PATH);
+	latencies.put("getShortestPathBidirectional", SHORTEST_PATH_BIDIRECTIONAL);
+	latencies.put("getFollows", GET_FOLLOWS);
+	latencies.put("getFollowers", GET_FOLLOWERS);
+	latencies.put("getLikes", GET_LIKES);
+	latencies.put("spanningTree", SPANNING_TREE);
+	latencies.put("betweennessCentrality", BETWEENNESS);
+	latencies.put("graphDiameter", DIAMETER);
+	latencies.put("load", LOAD);
+    }
+
+    protected GraphMetrics(){
+    }
+
+    /**
+     * get returns the live metrics, which read the counters every time they are asked
+     * @return metrics
+     */
+    public static GraphMetrics get(){
+	return instance;
+    }
+
+    /**
+     * snapshot copies every metric at once so they can be read and compared without changing underneath
+     * @return copy of the metrics
+     */
+    public static Snapshot snapshot(){
+	return new Snapshot(instance);
+    }
+
+    /**
+     * register makes the metrics visible over JMX under OBJECT_NAME. Registering twice does nothing
+     * @throws JMException if the platform MBean server refuses the bean
+     */
+    public static synchronized void register() throws JMException{
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	ObjectName name = new ObjectName(OBJECT_NAME);
+	if(!server.isRegistered(name)){
+	    server.registerMBean(instance, name);
+	}
+    }
+
+    /**
+     * recordSearch counts the work of one shortest path search
+     * @param settled vertices taken off the heap
+     * @param relaxed edges looked at
+     * @param heapOps inserts, decreases and polls
+     */
+    public static void recordSearch(long settled, long relaxed, long heapOps){
+	searches.increment();
+	verticesSettled.add(settled);
+	edgesRelaxed.add(relaxed);
+	heapOperations.add(heapOps);
+    }
+
+    /**
+     * recordSpanningForest counts the work of one spanning forest
+     * @param sorted edges that had to be sorted
+     * @param filtered edges dropped without sorting
+     */
+    public static void recordSpanningForest(long sorted, long filtered){
+	spanningForests.increment();
+	spanningEdgesSorted.add(sorted);
+	spanningEdgesFiltered.add(filtered);
+    }
+
+    /**
+     * recordLoad counts one load of a records file
+     * @param nanos the load took
+     * @param bytes in the file
+     * @param records accounts read
+     * @param edges follows read
+     */
+    public static void recordLoad(long nanos, long bytes, long records, long edges){
+	LOAD.record(nanos);
+	loadNanos.add(nanos);
+	bytesLoaded.add(bytes);
+	recordsLoaded.add(records);
+	edgesLoaded.add(edges);
+    }
+
+    public boolean isEnabled(){
+	return ENABLED;
+    }
+
+    public long getSearches(){
+	return searches.sum();
+    }
+
+    public long getVerticesSettled(){
+	return verticesSettled.sum();
+    }
+
+    public long getEdgesRelaxed(){
+	return edgesRelaxed.sum();
+    }
+
+    public long getHeapOperations(){
+	return heapOperations.sum();
+    }
+
+    public long getSpanningForests(){
+	return spanningForests.sum();
+    }
+
+    public long getSpanningEdgesSorted(){
+	return spanningEdgesSorted.sum();
+    }
+
+    public long getSpanningEdgesFiltered(){
+	return spanningEdgesFiltered.sum();
+    }
+
+    public long getRecordsLoaded(){
+	return recordsLoaded.sum();
+    }
+
+    public long getEdgesLoaded(){
+	return edgesLoaded.sum();
+    }
+
+    public long getBytesLoaded(){
+	return bytesLoaded.sum();
+    }
+
+    public double getLoadBytesPerSecond(){
+	long nanos = loadNanos.sum();
+	return nanos == 0 ? 0 : bytesLoaded.sum() * 1e9 / nanos;
+    }
+
+    public Map<String, LatencyHistogram.Summary> getLatencies(){
+	LinkedHashMap<String, LatencyHistogram.Summary> summaries = new LinkedHashMap<String, LatencyHistogram.Summary>();
+	for(Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()){
+	    summaries.put(entry.getKey(), entry.getValue().summary());
+	}
+	return summaries;
+    }
+
+    /**
+     * reset zeroes every counter and histogram
+     */
+    public void reset(){
+	for(LatencyHistogram histogram : latencies.values()){
+	    histogram.reset();
+	}
+	LongAdder[] counters = {searches, verticesSettled, edgesRelaxed, heapOperations, spanningForests,
+				spanningEdgesSorted, spanningEdgesFiltered, recordsLoaded, edgesLoaded, bytesLoaded,
+				loadNanos};
+	for(LongAdder counter : counters){
+	    counter.reset();
+	}
+    }
+
+    /**
+     * toString overrides object toString
+     * @return String with every counter and latency summary, one per line
+     */
+    public String toString(){
+	return snapshot().toString();
+    }
+
+    /**
+     * The Snapshot class holds the metrics as they were when snapshot was called
+     */
+    public static class Snapshot{
+
+	protected final long searches;
+	protected final long verticesSettled;
+	protected final long edgesRelaxed;
+	protected final long heapOperations;
+	protected final long spanningForests;
+	protected final long spanningEdgesSorted;
+	protected final long spanningEdgesFiltered;
+	protected final long recordsLoaded;
+	protected final long edgesLoaded;
+	protected final long bytesLoaded;
+	protected final double loadBytesPerSecond;
+	protected final Map<String, LatencyHistogram.Summary> latencies;
+
+	protected Snapshot(GraphMetrics metrics){
+	    searches = metrics.getSearches();
+	    verticesSettled = metrics.getVerticesSettled();
+	    edgesRelaxed = metrics.getEdgesRelaxed();
+	    heapOperations = metrics.getHeapOperations();
+	    spanningForests = metrics.getSpanningForests();
+	    spanningEdgesSorted = metrics.getSpanningEdgesSorted();
+	    spanningEdgesFiltered = metrics.getSpanningEdgesFiltered();
+	    recordsLoaded = metrics.getRecordsLoaded();
+	    edgesLoaded = metrics.getEdgesLoaded();
+	    bytesLoaded = metrics.getBytesLoaded();
+	    loadBytesPerSecond = metrics.getLoadBytesPerSecond();
+	    latencies = metrics.getLatencies();
+	}
+
+	public long getSearches(){
+	    return searches;
+	}
+
+	public long getVerticesSettled(){
+	    return verticesSettled;
+	}
+
+	public long getEdgesRelaxed(){
+	    return edgesRelaxed;
+	}
+
+	public long getHeapOperations(){
+	    return heapOperations;
+	}
+
+	public long getSpanningForests(){
+	    return spanningForests;
+	}
+
+	public long getSpanningEdgesSorted(){
+	    return spanningEdgesSorted;
+	}
+
+	public long getSpanningEdgesFiltered(){
+	    return spanningEdgesFiltered;
+	}
+
+	public long getRecordsLoaded(){
+	    return recordsLoaded;
+	}
+
+	public long getEdgesLoaded(){
+	    return edgesLoaded;
+	}
+
+	public long getBytesLoaded(){
+	    return bytesLoaded;
+	}
+
+	public double getLoadBytesPerSecond(){
+	    return loadBytesPerSecond;
+	}
+
+	/**
+	 * getLatency returns the latency summary of one query type
+	 * @param name the query type is reported under, such as getShortestPath
+	 * @return summary, or null if there is no such query type
+	 */
+	public LatencyHistogram.Summary getLatency(String name){
+	    return latencies.get(name);
+	}
+
+	public Map<String, LatencyHistogram.Summary> getLatencies(){
+	    return latencies;
+	}
+
+	/**
+	 * toString overrides object toString
+	 * @return String with every counter and latency summary, one per line
+	 */
+	public String toString(){
+	    StringBuilder result = new StringBuilder();
+	    result.append("searches=").append(searches).append(" settled=").append(verticesSettled);
+	    result.append(" relaxed=").append(edgesRelaxed).append(" heapOps=").append(heapOperations).append('\n');
+	    result.append("spanningForests=").append(spanningForests).append(" sorted=").append(spanningEdgesSorted);
+	    result.append(" filtered=").append(spanningEdgesFiltered).append('\n');
+	    result.append("records=").append(recordsLoaded).append(" edges=").append(edgesLoaded);
+	    result.append(" bytes=").append(bytesLoaded);
+	    result.append(String.format(" %.1fMB/s", loadBytesPerSecond / 1e6)).append('\n');
+	    for(Map.Entry<String, LatencyHistogram.Summary> entry : latencies.entrySet()){
+		if(entry.getValue().getCount() > 0){
+		    result.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		}
+	    }
+	    return result.toString();
+	}
+    }
+
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+
+/**
+ * The GraphMetricsMXBean interface is what JMX consoles see of GraphMetrics, registered under
+ * GraphMetrics.OBJECT_NAME. Durations are in nanoseconds
+ */
+
+public interface GraphMetricsMXBean{
+
+    public boolean isEnabled();
+
+    public long getSearches();
+
+    public long getVerticesSettled();
+
+    public long getEdgesRelaxed();
+
+    public long getHeapOperations();
+
+    public long getSpanningForests();
+
+    public long getSpanningEdgesSorted();
+
+    public long getSpanningEdgesFiltered();
+
+    public long getRecordsLoaded();
+
+    public long getEdgesLoaded();
+
+    public long getBytesLoaded();
+
+    public double getLoadBytesPerSecond();
+
+    public Map<String, LatencyHistogram.Summary> getLatencies();
+
+    public void reset();
+
+}
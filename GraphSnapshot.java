@@ -0,0 +1,361 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The GraphSnapshot class holds a read-only compressed sparse row (CSR) copy of a graph. Every vertex id is mapped
+ * to a dense int between 0 and size() - 1 (ids are kept in ascending order so the dense index of an id is its rank)
+ * and the outgoing and incoming adjacency of every vertex are stored as slices of primitive arrays. Within a slice
+ * the neighbors are sorted by dense index.
+ */
+
+public class GraphSnapshot<T>{
+
+    //ids[i] is the id of the vertex with dense index i, sorted ascending
+    protected final long[] ids;
+    //data[i] is the data of the vertex with dense index i
+    protected final Object[] data;
+    //the outgoing edges of vertex i are the slots outOffsets[i] to outOffsets[i + 1] - 1
+    protected final int[] outOffsets;
+    protected final int[] outTargets;
+    protected final float[] outWeights;
+    //the original edge for every outgoing slot, null when the snapshot was not frozen from a Graph
+    protected final Edge<T>[] outEdges;
+    //the incoming edges of vertex i are the slots inOffsets[i] to inOffsets[i + 1] - 1
+    protected final int[] inOffsets;
+    protected final int[] inSources;
+    protected final float[] inWeights;
+    //the outgoing slot holding the same edge as each incoming slot
+    protected final int[] inEdges;
+
+    /**
+     * the GraphSnapshot constructor takes already built CSR arrays and wraps them
+     * @param ids sorted vertex ids
+     * @param data of every vertex
+     * @param outOffsets, outTargets, outWeights forward adjacency
+     * @param outEdges original edge objects, may be null
+     * @param inOffsets, inSources, inWeights, inEdges reverse adjacency
+     */
+    protected GraphSnapshot(long[] ids, Object[] data, int[] outOffsets, int[] outTargets, float[] outWeights,
+			    Edge<T>[] outEdges, int[] inOffsets, int[] inSources, float[] inWeights, int[] inEdges){
+	this.ids = ids;
+	this.data = data;
+	this.outOffsets = outOffsets;
+	this.outTargets = outTargets;
+	this.outWeights = outWeights;
+	this.outEdges = outEdges;
+	this.inOffsets = inOffsets;
+	this.inSources = inSources;
+	this.inWeights = inWeights;
+	this.inEdges = inEdges;
+    }
+
+    /**
+     * of builds a snapshot of the given vertices. Edges whose source or sink is not one of the vertices are left out.
+     * The build is linear in the number of vertices and edges apart from sorting the ids
+     * @param vertices to be frozen
+     * @return snapshot of the vertices and the edges between them
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> GraphSnapshot<T> of(Collection<Vertex<T>> vertices){
+	int n = vertices.size();
+	Vertex<T>[] byIndex = new Vertex[n];
+	long[] ids = new long[n];
+	int count = 0;
+	for(Vertex<T> vertex : vertices){
+	    ids[count] = vertex.getId();
+	    count++;
+	}
+	Arrays.sort(ids);
+	for(Vertex<T> vertex : vertices){
+	    byIndex[Arrays.binarySearch(ids, vertex.getId())] = vertex;
+	}
+
+	//list the edges grouped by source in ascending source order
+	int m = 0;
+	for(Vertex<T> vertex : byIndex){
+	    m += vertex.getOutgoing().size();
+	}
+	int[] edgeSource = new int[m];
+	int[] edgeTarget = new int[m];
+	Edge<T>[] edgeObject = new Edge[m];
+	m = 0;
+	for(int i = 0; i < n; i++){
+	    for(Edge<T> edge : byIndex[i].getOutgoing()){
+		int target = Arrays.binarySearch(ids, edge.getSink().getId());
+		if(target >= 0){
+		    edgeSource[m] = i;
+		    edgeTarget[m] = target;
+		    edgeObject[m] = edge;
+		    m++;
+		}
+	    }
+	}
+
+	//a stable counting sort by target gives the incoming slices with their sources already ascending
+	int[] inOffsets = new int[n + 1];
+	for(int e = 0; e < m; e++){
+	    inOffsets[edgeTarget[e] + 1]++;
+	}
+	for(int i = 0; i < n; i++){
+	    inOffsets[i + 1] += inOffsets[i];
+	}
+	int[] inOrder = new int[m];
+	int[] next = Arrays.copyOf(inOffsets, n);
+	for(int e = 0; e < m; e++){
+	    inOrder[next[edgeTarget[e]]++] = e;
+	}
+
+	//a second stable counting sort of that order by source gives outgoing slices with targets ascending
+	int[] outOffsets = new int[n + 1];
+	for(int e = 0; e < m; e++){
+	    outOffsets[edgeSource[e] + 1]++;
+	}
+	for(int i = 0; i < n; i++){
+	    outOffsets[i + 1] += outOffsets[i];
+	}
+	int[] outSlot = new int[m];
+	next = Arrays.copyOf(outOffsets, n);
+	for(int k = 0; k < m; k++){
+	    int e = inOrder[k];
+	    outSlot[e] = next[edgeSource[e]]++;
+	}
+
+	int[] outTargets = new int[m];
+	float[] outWeights = new float[m];
+	Edge<T>[] outEdges = new Edge[m];
+	int[] inSources = new int[m];
+	float[] inWeights = new float[m];
+	int[] inEdges = new int[m];
+	for(int e = 0; e < m; e++){
+	    outTargets[outSlot[e]] = edgeTarget[e];
+	    outWeights[outSlot[e]] = edgeObject[e].getWeight();
+	    outEdges[outSlot[e]] = edgeObject[e];
+	}
+	for(int k = 0; k < m; k++){
+	    int e = inOrder[k];
+	    inSources[k] = edgeSource[e];
+	    inWeights[k] = edgeObject[e].getWeight();
+	    inEdges[k] = outSlot[e];
+	}
+	Object[] data = new Object[n];
+	for(int i = 0; i < n; i++){
+	    data[i] = byIndex[i].getData();
+	}
+	return new GraphSnapshot<T>(ids, data, outOffsets, outTargets, outWeights, outEdges,
+				    inOffsets, inSources, inWeights, inEdges);
+    }
+
+    /**
+     * size returns the number of vertices in the snapshot
+     * @return number of vertices
+     */
+    public int size(){
+	return ids.length;
+    }
+
+    /**
+     * edgeCount returns the number of edges in the snapshot
+     * @return number of edges
+     */
+    public int edgeCount(){
+	return outTargets.length;
+    }
+
+    /**
+     * indexOf returns the dense index of a given id
+     * @param id
+     * @return dense index of the id or -1 if it is not in the snapshot
+     */
+    public int indexOf(long id){
+	int index = Arrays.binarySearch(ids, id);
+	if(index < 0){
+	    return -1;
+	}
+	return index;
+    }
+
+    /**
+     * idOf returns the id of the vertex with a given dense index
+     * @param index
+     * @return id
+     */
+    public long idOf(int index){
+	return ids[index];
+    }
+
+    /**
+     * getData returns the data of the vertex with a given dense index
+     * @param index
+     * @return data
+     */
+    @SuppressWarnings("unchecked")
+    public T getData(int index){
+	return (T) data[index];
+    }
+
+    /**
+     * outDegree returns the number of outgoing edges of a vertex
+     * @param index
+     * @return out degree
+     */
+    public int outDegree(int index){
+	return outOffsets[index + 1] - outOffsets[index];
+    }
+
+    /**
+     * inDegree returns the number of incoming edges of a vertex
+     * @param index
+     * @return in degree
+     */
+    public int inDegree(int index){
+	return inOffsets[index + 1] - inOffsets[index];
+    }
+
+    /**
+     * outStart and outEnd return the range of outgoing slots of a vertex
+     * @param index
+     * @return first slot (inclusive) and last slot (exclusive)
+     */
+    public int outStart(int index){
+	return outOffsets[index];
+    }
+
+    public int outEnd(int index){
+	return outOffsets[index + 1];
+    }
+
+    /**
+     * inStart and inEnd return the range of incoming slots of a vertex
+     * @param index
+     * @return first slot (inclusive) and last slot (exclusive)
+     */
+    public int inStart(int index){
+	return inOffsets[index];
+    }
+
+    public int inEnd(int index){
+	return inOffsets[index + 1];
+    }
+
+    /**
+     * target returns the dense index of the sink of an outgoing slot
+     * @param slot
+     * @return sink index
+     */
+    public int target(int slot){
+	return outTargets[slot];
+    }
+
+    /**
+     * weight returns the weight of an outgoing slot
+     * @param slot
+     * @return weight
+     */
+    public float weight(int slot){
+	return outWeights[slot];
+    }
+
+    /**
+     * source returns the dense index of the source of an incoming slot
+     * @param slot
+     * @return source index
+     */
+    public int source(int slot){
+	return inSources[slot];
+    }
+
+    /**
+     * inWeight returns the weight of an incoming slot
+     * @param slot
+     * @return weight
+     */
+    public float inWeight(int slot){
+	return inWeights[slot];
+    }
+
+    /**
+     * inEdge returns the outgoing slot that holds the same edge as an incoming slot
+     * @param slot
+     * @return outgoing slot
+     */
+    public int inEdge(int slot){
+	return inEdges[slot];
+    }
+
+    /**
+     * getEdge returns the original edge for an outgoing slot
+     * @param slot
+     * @return edge, or null if the snapshot was not frozen from a graph
+     */
+    public Edge<T> getEdge(int slot){
+	if(outEdges == null){
+	    return null;
+	}
+	return outEdges[slot];
+    }
+
+    /**
+     * findEdge returns the first outgoing slot from one vertex to another using a binary search of the sorted
+     * outgoing slice
+     * @param source and target dense indices
+     * @return slot or -1 if there is no such edge
+     */
+    public int findEdge(int source, int target){
+	int low = outOffsets[source];
+	int high = outOffsets[source + 1] - 1;
+	int found = -1;
+	while(low <= high){
+	    int mid = (low + high) >>> 1;
+	    if(outTargets[mid] < target){
+		low = mid + 1;
+	    }
+	    else{
+		if(outTargets[mid] == target){
+		    found = mid;
+		}
+		high = mid - 1;
+	    }
+	}
+	return found;
+    }
+
+    /**
+     * toPath turns a chain of outgoing slots into the list of original edges, in the order getShortestPath uses
+     * (the edge into the end vertex first)
+     * @param predecessor - for each dense index the outgoing slot used to reach it, or -1
+     * @param start and end dense indices
+     * @return list of edges from end back to start
+     */
+    public ArrayList<Edge<T>> toPath(int[] predecessor, int start, int end){
+	ArrayList<Edge<T>> path = new ArrayList<Edge<T>>();
+	int current = end;
+	while(current != start){
+	    int slot = predecessor[current];
+	    path.add(outEdges[slot]);
+	    current = sourceOf(slot);
+	}
+	return path;
+    }
+
+    /**
+     * sourceOf returns the dense index of the source of an outgoing slot with a binary search of the offsets
+     * @param slot
+     * @return source index
+     */
+    public int sourceOf(int slot){
+	int low = 0;
+	int high = ids.length - 1;
+	while(low < high){
+	    int mid = (low + high + 1) >>> 1;
+	    if(outOffsets[mid] <= slot){
+		low = mid;
+	    }
+	    else{
+		high = mid - 1;
+	    }
+	}
+	return low;
+    }
+
+}
@@ -0,0 +1,190 @@
+import java.util.Arrays;
+
+/**
+ * The IndexedMinHeap class holds a binary min heap of the ints 0 to capacity - 1 keyed by a double priority. Each
+ * item knows its position in the heap so contains and decreaseKey are constant and logarithmic time rather than the
+ * linear scans PriorityQueue.contains and PriorityQueue.remove do
+ */
+
+public class IndexedMinHeap{
+
+    protected int[] heap;
+    //position[item] is where the item sits in heap, or -1 if it is not in the heap
+    protected int[] position;
+    protected double[] key;
+    protected int size;
+
+    /**
+     * the IndexedMinHeap constructor makes an empty heap for items 0 to capacity - 1
+     * @param capacity number of distinct items
+     */
+    public IndexedMinHeap(int capacity){
+	heap = new int[capacity];
+	position = new int[capacity];
+	key = new double[capacity];
+	Arrays.fill(position, -1);
+	size = 0;
+    }
+
+    /**
+     * size returns the number of items in the heap
+     * @return size
+     */
+    public int size(){
+	return size;
+    }
+
+    /**
+     * isEmpty returns whether the heap has no items
+     * @return true if the heap is empty
+     */
+    public boolean isEmpty(){
+	return size == 0;
+    }
+
+    /**
+     * contains returns whether an item is in the heap
+     * @param item
+     * @return true if the item is in the heap
+     */
+    public boolean contains(int item){
+	return position[item] >= 0;
+    }
+
+    /**
+     * keyOf returns the priority of an item in the heap
+     * @param item
+     * @return priority
+     */
+    public double keyOf(int item){
+	return key[item];
+    }
+
+    /**
+     * insert adds an item that is not yet in the heap
+     * @param item
+     * @param priority
+     */
+    public void insert(int item, double priority){
+	key[item] = priority;
+	heap[size] = item;
+	position[item] = size;
+	size++;
+	siftUp(size - 1);
+    }
+
+    /**
+     * decreaseKey lowers the priority of an item already in the heap
+     * @param item
+     * @param priority the new, smaller priority
+     */
+    public void decreaseKey(int item, double priority){
+	key[item] = priority;
+	siftUp(position[item]);
+    }
+
+    /**
+     * offer inserts an item or lowers its priority if it is already in the heap and the new priority is smaller
+     * @param item
+     * @param priority
+     * @return true if the heap changed
+     */
+    public boolean offer(int item, double priority){
+	if(position[item] < 0){
+	    insert(item, priority);
+	    return true;
+	}
+	if(priority < key[item]){
+	    decreaseKey(item, priority);
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * peek returns the item with the smallest priority without removing it
+     * @return item
+     */
+    public int peek(){
+	return heap[0];
+    }
+
+    /**
+     * peekKey returns the smallest priority in the heap
+     * @return priority
+     */
+    public double peekKey(){
+	return key[heap[0]];
+    }
+
+    /**
+     * poll removes and returns the item with the smallest priority
+     * @return item
+     */
+    public int poll(){
+	int top = heap[0];
+	size--;
+	position[top] = -1;
+	if(size > 0){
+	    heap[0] = heap[size];
+	    position[heap[0]] = 0;
+	    siftDown(0);
+	}
+	return top;
+    }
+
+    /**
+     * clear empties the heap in time proportional to the number of items left in it
+     */
+    public void clear(){
+	for(int i = 0; i < size; i++){
+	    position[heap[i]] = -1;
+	}
+	size = 0;
+    }
+
+    /**
+     * siftUp moves the item at a given heap position up until its parent is no bigger
+     * @param index heap position
+     */
+    protected void siftUp(int index){
+	int item = heap[index];
+	double priority = key[item];
+	while(index > 0){
+	    int parent = (index - 1) >>> 1;
+	    if(key[heap[parent]] <= priority){
+		break;
+	    }
+	    heap[index] = heap[parent];
+	    position[heap[index]] = index;
+	    index = parent;
+	}
+	heap[index] = item;
+	position[item] = index;
+    }
+
+    /**
+     * siftDown moves the item at a given heap position down until its children are no smaller
+     * @param index heap position
+     */
+    protected void siftDown(int index){
+	int item = heap[index];
+	double priority = key[item];
+	int half = size >>> 1;
+	while(index < half){
+	    int child = 2 * index + 1;
+	    if(child + 1 < size && key[heap[child + 1]] < key[heap[child]]){
+		child++;
+	    }
+	    if(priority <= key[heap[child]]){
+		break;
+	    }
+	    heap[index] = heap[child];
+	    position[heap[index]] = index;
+	    index = child;
+	}
+	heap[index] = item;
+	position[item] = index;
+    }
+
+}
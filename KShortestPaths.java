@@ -0,0 +1,281 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * The KShortestPaths class finds the k cheapest simple paths between two vertices of a graph snapshot with Yen's
+ * algorithm. The cheapest path comes from Dijkstra. Every later path leaves an earlier one at some spur vertex: for
+ * each vertex of the last path found, the edges that the paths found so far take out of it after the same root are
+ * banned, as are the root's vertices, and Dijkstra finds the cheapest way on from the spur. The cheapest of all
+ * those candidates is the next path. That is O(k n) Dijkstra runs in all, instead of listing every simple path.
+ *
+ * Bans are stamps in int arrays, so starting a new search clears them for free, and Dijkstra keeps its distances,
+ * predecessors and heap between searches and only resets what the last one touched. Edge weights must not be
+ * negative
+ */
+
+public class KShortestPaths<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+    //Dijkstra state, reset entry by entry after each search
+    protected final double[] dist;
+    protected final int[] predecessor;
+    protected final IndexedMinHeap heap;
+    protected final int[] touched;
+    protected int touchedSize;
+    //bannedVertex[v] == stamp and bannedSlot[slot] == stamp while the search with that stamp runs
+    protected final int[] bannedVertex;
+    protected final int[] bannedSlot;
+    protected int stamp;
+
+    /**
+     * the KShortestPaths constructor takes the snapshot to search
+     * @param snapshot of the graph
+     */
+    public KShortestPaths(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+	int n = snapshot.size();
+	dist = new double[n];
+	predecessor = new int[n];
+	heap = new IndexedMinHeap(n);
+	touched = new int[n];
+	Arrays.fill(dist, Double.POSITIVE_INFINITY);
+	Arrays.fill(predecessor, -1);
+	bannedVertex = new int[n];
+	bannedSlot = new int[snapshot.edgeCount()];
+    }
+
+    /**
+     * The Path class holds one path as its start and the out slots of its edges, from start to end, and its cost
+     */
+    public static class Path<T>{
+
+	protected final GraphSnapshot<T> snapshot;
+	protected final int start;
+	protected final int[] slots;
+	protected final double cost;
+
+	protected Path(GraphSnapshot<T> snapshot, int start, int[] slots, double cost){
+	    this.snapshot = snapshot;
+	    this.start = start;
+	    this.slots = slots;
+	    this.cost = cost;
+	}
+
+	/**
+	 * getEdges returns the edges of the path
+	 * @return new list of edges from start to end
+	 */
+	public ArrayList<Edge<T>> getEdges(){
+	    ArrayList<Edge<T>> edges = new ArrayList<Edge<T>>(slots.length);
+	    for(int slot : slots){
+		edges.add(snapshot.getEdge(slot));
+	    }
+	    return edges;
+	}
+
+	/**
+	 * getIds returns the ids of the vertices on the path
+	 * @return ids from start to end
+	 */
+	public long[] getIds(){
+	    long[] ids = new long[slots.length + 1];
+	    ids[0] = snapshot.idOf(start);
+	    for(int i = 0; i < slots.length; i++){
+		ids[i + 1] = snapshot.idOf(snapshot.target(slots[i]));
+	    }
+	    return ids;
+	}
+
+	/**
+	 * getCost returns the total weight of the path
+	 * @return cost
+	 */
+	public double getCost(){
+	    return cost;
+	}
+
+	/**
+	 * equals and hashCode compare paths by their edges, so a candidate found from two spurs is only kept once
+	 */
+	public boolean equals(Object other){
+	    return other instanceof Path && Arrays.equals(slots, ((Path<?>) other).slots);
+	}
+
+	public int hashCode(){
+	    return Arrays.hashCode(slots);
+	}
+    }
+
+    /**
+     * find returns the k cheapest simple paths from one vertex to another
+     * @param startId id of the first vertex
+     * @param endId id of the last vertex
+     * @param k most paths to return
+     * @return paths, cheapest first, empty if end cannot be reached
+     */
+    public synchronized ArrayList<Path<T>> find(long startId, long endId, int k){
+	ArrayList<Path<T>> found = new ArrayList<Path<T>>();
+	int start = snapshot.indexOf(startId);
+	int end = snapshot.indexOf(endId);
+	if(start < 0 || end < 0 || k <= 0){
+	    return found;
+	}
+	nextStamp();
+	int[] first = search(start, end);
+	if(first == null){
+	    return found;
+	}
+	found.add(new Path<T>(snapshot, start, first, costOf(first, 0, first.length)));
+	PriorityQueue<Path<T>> candidates = new PriorityQueue<Path<T>>(16, new Comparator<Path<T>>(){
+		public int compare(Path<T> a, Path<T> b){
+		    if(a.cost != b.cost){
+			return a.cost < b.cost ? -1 : 1;
+		    }
+		    if(a.slots.length != b.slots.length){
+			return a.slots.length - b.slots.length;
+		    }
+		    for(int i = 0; i < a.slots.length; i++){
+			if(a.slots[i] != b.slots[i]){
+			    return a.slots[i] - b.slots[i];
+			}
+		    }
+		    return 0;
+		}
+	    });
+	HashSet<Path<T>> seen = new HashSet<Path<T>>();
+	seen.add(found.get(0));
+	while(found.size() < k){
+	    int[] last = found.get(found.size() - 1).slots;
+	    for(int j = 0; j < last.length; j++){
+		int spur = snapshot.sourceOf(last[j]);
+		nextStamp();
+		//no path with the same root may leave the spur by an edge an earlier path took
+		for(Path<T> path : found){
+		    if(path.slots.length > j && sameRoot(path.slots, last, j)){
+			bannedSlot[path.slots[j]] = stamp;
+		    }
+		}
+		//nor go back through the root
+		for(int i = 0; i < j; i++){
+		    bannedVertex[snapshot.sourceOf(last[i])] = stamp;
+		}
+		int[] spurPath = search(spur, end);
+		if(spurPath == null){
+		    continue;
+		}
+		int[] slots = Arrays.copyOf(last, j + spurPath.length);
+		System.arraycopy(spurPath, 0, slots, j, spurPath.length);
+		Path<T> candidate = new Path<T>(snapshot, start, slots, costOf(slots, 0, slots.length));
+		if(seen.add(candidate)){
+		    candidates.add(candidate);
+		}
+	    }
+	    if(candidates.isEmpty()){
+		break;
+	    }
+	    found.add(candidates.poll());
+	}
+	return found;
+    }
+
+    /**
+     * nextStamp lifts every ban by moving on to a new stamp, clearing the ban arrays only when stamps run out
+     */
+    protected void nextStamp(){
+	stamp++;
+	if(stamp == Integer.MAX_VALUE){
+	    Arrays.fill(bannedVertex, 0);
+	    Arrays.fill(bannedSlot, 0);
+	    stamp = 1;
+	}
+    }
+
+    /**
+     * sameRoot returns whether two paths take the same first edges
+     * @param a and b slots of the paths
+     * @param length number of edges to compare
+     * @return true if the first length edges are the same
+     */
+    protected static boolean sameRoot(int[] a, int[] b, int length){
+	for(int i = 0; i < length; i++){
+	    if(a[i] != b[i]){
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * costOf adds up the weights of some edges of a path
+     * @param slots of the path
+     * @param from and to the range of edges to add
+     * @return cost
+     */
+    protected double costOf(int[] slots, int from, int to){
+	double cost = 0;
+	for(int i = from; i < to; i++){
+	    cost += snapshot.weight(slots[i]);
+	}
+	return cost;
+    }
+
+    /**
+     * search runs Dijkstra from source to target around the vertices and edges banned with the current stamp
+     * @param source and target dense indices
+     * @return out slots of the cheapest path from source to target, or null if there is none
+     */
+    protected int[] search(int source, int target){
+	for(int i = 0; i < touchedSize; i++){
+	    dist[touched[i]] = Double.POSITIVE_INFINITY;
+	    predecessor[touched[i]] = -1;
+	}
+	touchedSize = 0;
+	heap.clear();
+	int[] offsets = snapshot.outOffsets;
+	int[] targets = snapshot.outTargets;
+	float[] weights = snapshot.outWeights;
+	dist[source] = 0;
+	touched[touchedSize++] = source;
+	heap.insert(source, 0);
+	while(!heap.isEmpty()){
+	    int v = heap.poll();
+	    if(v == target){
+		int length = 0;
+		for(int w = target; w != source; w = snapshot.sourceOf(predecessor[w])){
+		    length++;
+		}
+		int[] slots = new int[length];
+		for(int w = target; w != source; w = snapshot.sourceOf(predecessor[w])){
+		    slots[--length] = predecessor[w];
+		}
+		return slots;
+	    }
+	    for(int slot = offsets[v]; slot < offsets[v + 1]; slot++){
+		int w = targets[slot];
+		if(bannedSlot[slot] == stamp || bannedVertex[w] == stamp){
+		    continue;
+		}
+		double cost = dist[v] + weights[slot];
+		if(cost < dist[w]){
+		    if(dist[w] == Double.POSITIVE_INFINITY){
+			touched[touchedSize++] = w;
+			heap.insert(w, cost);
+		    }
+		    else if(heap.contains(w)){
+			heap.decreaseKey(w, cost);
+		    }
+		    else{
+			continue;
+		    }
+		    dist[w] = cost;
+		    predecessor[w] = slot;
+		}
+	    }
+	}
+	return null;
+    }
+
+}
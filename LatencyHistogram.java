@@ -0,0 +1,185 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in nanoseconds in log-linear buckets, the layout HdrHistogram uses.
+ * Values below 2 * SUB_BUCKETS get a bucket each; above that every power of two is split into SUB_BUCKETS equal
+ * buckets, so any value is known to within 1 / SUB_BUCKETS of itself, from nanoseconds to minutes, in a few thousand
+ * counters. Recording is a couple of bit operations and one atomic increment, so many threads can record at once
+ * and the histogram can be left on in production
+ */
+
+public class LatencyHistogram{
+
+    //number of buckets per power of two, which sets the precision
+    protected static final int SUB_BUCKET_BITS = 6;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values are kept below 2^LARGEST_BIT, about 9 minutes in nanoseconds
+    protected static final int LARGEST_BIT = 39;
+
+    protected final AtomicLongArray counts;
+    protected final LongAdder total;
+    protected final AtomicLong max;
+
+    /**
+     * the LatencyHistogram constructor makes an empty histogram
+     */
+    public LatencyHistogram(){
+	counts = new AtomicLongArray(indexOf((1L << LARGEST_BIT) - 1) + 1);
+	total = new LongAdder();
+	max = new AtomicLong();
+    }
+
+    /**
+     * indexOf returns the bucket a value falls in
+     * @param value not negative
+     * @return bucket
+     */
+    protected static int indexOf(long value){
+	if(value < 2 * SUB_BUCKETS){
+	    return (int) value;
+	}
+	int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+	return (int) (SUB_BUCKETS * shift + (value >>> shift));
+    }
+
+    /**
+     * highestValueIn returns the largest value that falls in a bucket
+     * @param index bucket
+     * @return value
+     */
+    protected static long highestValueIn(int index){
+	if(index < 2 * SUB_BUCKETS){
+	    return index;
+	}
+	int shift = index / SUB_BUCKETS - 1;
+	long low = (long) (index - SUB_BUCKETS * shift) << shift;
+	return low + (1L << shift) - 1;
+    }
+
+    /**
+     * record adds one duration to the histogram
+     * @param nanos duration, clamped to the range the histogram covers
+     */
+    public void record(long nanos){
+	long value = Math.min(Math.max(nanos, 0), (1L << LARGEST_BIT) - 1);
+	counts.incrementAndGet(indexOf(value));
+	total.add(value);
+	long largest = max.get();
+	while(value > largest && !max.compareAndSet(largest, value)){
+	    largest = max.get();
+	}
+    }
+
+    /**
+     * reset empties the histogram. Values recorded while it runs may or may not be kept
+     */
+    public void reset(){
+	for(int i = 0; i < counts.length(); i++){
+	    counts.set(i, 0);
+	}
+	total.reset();
+	max.set(0);
+    }
+
+    /**
+     * summary reads the histogram into a summary of its count, mean, percentiles and maximum
+     * @return summary
+     */
+    public Summary summary(){
+	long[] copy = new long[counts.length()];
+	long count = 0;
+	for(int i = 0; i < copy.length; i++){
+	    copy[i] = counts.get(i);
+	    count += copy[i];
+	}
+	long largest = max.get();
+	double mean = count == 0 ? 0 : (double) total.sum() / count;
+	return new Summary(count, mean, percentile(copy, count, 50, largest), percentile(copy, count, 90, largest),
+			   percentile(copy, count, 99, largest), percentile(copy, count, 99.9, largest), largest);
+    }
+
+    /**
+     * percentile finds the value at or below which a given percent of the recorded values fall
+     * @param counts copy of the buckets
+     * @param count of recorded values
+     * @param percent from 0 to 100
+     * @param largest value recorded
+     * @return the highest value in the bucket the percentile falls in, or 0 if nothing was recorded
+     */
+    protected static long percentile(long[] counts, long count, double percent, long largest){
+	long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+	long seen = 0;
+	for(int i = 0; i < counts.length; i++){
+	    seen += counts[i];
+	    if(seen >= rank){
+		return Math.min(highestValueIn(i), largest);
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * The Summary class holds what a histogram looked like when it was read, with every duration in nanoseconds.
+     * Its getters let JMX show it as composite data
+     */
+    public static class Summary{
+
+	protected final long count;
+	protected final double mean;
+	protected final long p50;
+	protected final long p90;
+	protected final long p99;
+	protected final long p999;
+	protected final long max;
+
+	public Summary(long count, double mean, long p50, long p90, long p99, long p999, long max){
+	    this.count = count;
+	    this.mean = mean;
+	    this.p50 = p50;
+	    this.p90 = p90;
+	    this.p99 = p99;
+	    this.p999 = p999;
+	    this.max = max;
+	}
+
+	public long getCount(){
+	    return count;
+	}
+
+	public double getMean(){
+	    return mean;
+	}
+
+	public long getP50(){
+	    return p50;
+	}
+
+	public long getP90(){
+	    return p90;
+	}
+
+	public long getP99(){
+	    return p99;
+	}
+
+	public long getP999(){
+	    return p999;
+	}
+
+	public long getMax(){
+	    return max;
+	}
+
+	/**
+	 * toString overrides object toString
+	 * @return String with the count and the durations in microseconds
+	 */
+	public String toString(){
+	    return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count,
+				 mean / 1e3, p50 / 1e3, p90 / 1e3, p99 / 1e3, p999 / 1e3, max / 1e3);
+	}
+    }
+
+}
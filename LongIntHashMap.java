@@ -0,0 +1,243 @@
+import java.util.Arrays;
+
+/**
+ * The LongIntHashMap class maps long keys to int values with open addressing and linear probing over two primitive
+ * arrays, so no key is ever boxed. Removal shifts the following entries back instead of leaving tombstones. It is
+ * not synchronized, but any number of threads may call get at once as long as nobody is changing the map
+ */
+
+public class LongIntHashMap{
+
+    protected static final long EMPTY = Long.MIN_VALUE;
+
+    protected long[] keys;
+    protected int[] values;
+    protected int size;
+    protected int mask;
+    //the map holds a key equal to EMPTY outside of the table
+    protected boolean hasEmptyKey;
+    protected int emptyKeyValue;
+
+    /**
+     * the LongIntHashMap constructor makes a map with room for a given number of entries before it grows
+     * @param expected number of entries
+     */
+    public LongIntHashMap(int expected){
+	int capacity = 8;
+	while(capacity * 3 / 4 < expected){
+	    capacity <<= 1;
+	}
+	allocate(capacity);
+	size = 0;
+    }
+
+    /**
+     * allocate makes empty key and value arrays of a given power of two capacity
+     * @param capacity of the table
+     */
+    protected void allocate(int capacity){
+	keys = new long[capacity];
+	values = new int[capacity];
+	Arrays.fill(keys, EMPTY);
+	mask = capacity - 1;
+    }
+
+    /**
+     * slot returns the preferred table slot of a key
+     * @param key
+     * @return slot
+     */
+    protected int slot(long key){
+	long h = key * 0x9E3779B97F4A7C15L;
+	return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * size returns the number of entries in the map
+     * @return size
+     */
+    public int size(){
+	return size;
+    }
+
+    /**
+     * get returns the value stored for a key
+     * @param key
+     * @param missing value to return if the key is not in the map
+     * @return value or missing
+     */
+    public int get(long key, int missing){
+	if(key == EMPTY){
+	    return hasEmptyKey ? emptyKeyValue : missing;
+	}
+	int i = slot(key);
+	while(true){
+	    long k = keys[i];
+	    if(k == key){
+		return values[i];
+	    }
+	    if(k == EMPTY){
+		return missing;
+	    }
+	    i = (i + 1) & mask;
+	}
+    }
+
+    /**
+     * containsKey returns whether the map holds a key
+     * @param key
+     * @return true if the key is in the map
+     */
+    public boolean containsKey(long key){
+	if(key == EMPTY){
+	    return hasEmptyKey;
+	}
+	int i = slot(key);
+	while(true){
+	    long k = keys[i];
+	    if(k == key){
+		return true;
+	    }
+	    if(k == EMPTY){
+		return false;
+	    }
+	    i = (i + 1) & mask;
+	}
+    }
+
+    /**
+     * put stores a value for a key, replacing any value already there
+     * @param key
+     * @param value
+     */
+    public void put(long key, int value){
+	if(key == EMPTY){
+	    if(!hasEmptyKey){
+		size++;
+	    }
+	    hasEmptyKey = true;
+	    emptyKeyValue = value;
+	    return;
+	}
+	int i = slot(key);
+	while(true){
+	    long k = keys[i];
+	    if(k == key){
+		values[i] = value;
+		return;
+	    }
+	    if(k == EMPTY){
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if(size > (mask + 1) * 3 / 4){
+		    grow();
+		}
+		return;
+	    }
+	    i = (i + 1) & mask;
+	}
+    }
+
+    /**
+     * putIfAbsent stores a value for a key only if the key is not in the map yet
+     * @param key
+     * @param value
+     * @return the value already stored for the key, or value if it was stored now
+     */
+    public int putIfAbsent(long key, int value){
+	if(key == EMPTY){
+	    if(!hasEmptyKey){
+		put(key, value);
+	    }
+	    return emptyKeyValue;
+	}
+	int i = slot(key);
+	while(true){
+	    long k = keys[i];
+	    if(k == key){
+		return values[i];
+	    }
+	    if(k == EMPTY){
+		put(key, value);
+		return value;
+	    }
+	    i = (i + 1) & mask;
+	}
+    }
+
+    /**
+     * remove takes a key out of the map, shifting later entries of its probe run back so lookups stay correct
+     * @param key
+     * @param missing value to return if the key is not in the map
+     * @return the value that was stored or missing
+     */
+    public int remove(long key, int missing){
+	if(key == EMPTY){
+	    if(!hasEmptyKey){
+		return missing;
+	    }
+	    hasEmptyKey = false;
+	    size--;
+	    return emptyKeyValue;
+	}
+	int i = slot(key);
+	while(true){
+	    long k = keys[i];
+	    if(k == EMPTY){
+		return missing;
+	    }
+	    if(k == key){
+		break;
+	    }
+	    i = (i + 1) & mask;
+	}
+	int removed = values[i];
+	size--;
+	//backward shift deletion
+	int gap = i;
+	int j = (i + 1) & mask;
+	while(keys[j] != EMPTY){
+	    int home = slot(keys[j]);
+	    //move j into the gap unless its home lies cyclically in (gap, j]
+	    if(((j - home) & mask) >= ((j - gap) & mask)){
+		keys[gap] = keys[j];
+		values[gap] = values[j];
+		gap = j;
+	    }
+	    j = (j + 1) & mask;
+	}
+	keys[gap] = EMPTY;
+	return removed;
+    }
+
+    /**
+     * clear removes every entry
+     */
+    public void clear(){
+	Arrays.fill(keys, EMPTY);
+	hasEmptyKey = false;
+	size = 0;
+    }
+
+    /**
+     * grow doubles the table and puts every entry back
+     */
+    protected void grow(){
+	long[] oldKeys = keys;
+	int[] oldValues = values;
+	allocate(oldKeys.length * 2);
+	for(int j = 0; j < oldKeys.length; j++){
+	    long key = oldKeys[j];
+	    if(key != EMPTY){
+		int i = slot(key);
+		while(keys[i] != EMPTY){
+		    i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = oldValues[j];
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,30 @@
+import java.io.IOException;
+
+/**
+ * The MalformedRecordException class is thrown when a records file has a line that cannot be read, and knows the
+ * byte offset in the file where that line starts
+ */
+
+public class MalformedRecordException extends IOException{
+
+    protected final long offset;
+
+    /**
+     * the MalformedRecordException constructor takes the offset of the bad line and what is wrong with it
+     * @param offset in bytes from the start of the file
+     * @param message describing the problem
+     */
+    public MalformedRecordException(long offset, String message){
+	super("offset " + offset + ": " + message);
+	this.offset = offset;
+    }
+
+    /**
+     * getOffset returns the byte offset of the line that could not be read
+     * @return offset
+     */
+    public long getOffset(){
+	return offset;
+    }
+
+}
@@ -0,0 +1,556 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The MappedSocialGraph class is a read-only social graph backed by a memory mapped binary snapshot file. The file
+ * is a 64 byte header followed by sections, each starting on an 8 byte boundary:
+ *
+ *   header       magic, format version, vertex count n, edge count m, name pool size, CRC32 of everything after
+ *                the header
+ *   ids          long[n], ascending, so the dense index of an id is its rank
+ *   nameOffsets  int[n + 1], where the UTF-8 name of vertex i starts in the name pool
+ *   outOffsets   int[n + 1], outTargets int[m], outWeights float[m]  forward CSR adjacency
+ *   inOffsets    int[n + 1], inSources int[m], inEdges int[m]  reverse CSR adjacency, inEdges giving the outgoing
+ *                slot of the same edge
+ *   names        the name pool
+ *
+ * which is the layout of a GraphSnapshot. open only reads the header and maps every section, so it takes about the
+ * same time for any size of file and pages are read in as they are first touched. Checking the CRC reads the whole
+ * file, so it is left to verify. One mapping can be at most 2GB, so sections are mapped in windows of 1GB and any
+ * section can be as big as the counts in the header allow; only the name pool is kept under 2GB
+ */
+
+public class MappedSocialGraph{
+
+    protected static final int MAGIC = 0x53474246;
+    protected static final int VERSION = 1;
+    protected static final int HEADER_SIZE = 64;
+    //where the crc is in the header, so save can fill it in last
+    protected static final int CRC_POSITION = 24;
+    //bytes in one mapped window of a section, a multiple of every element size so no element straddles two
+    protected static final int WINDOW_SHIFT = 30;
+    protected static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    protected final Path path;
+    protected final int n;
+    protected final int m;
+    protected final long poolSize;
+    protected final long crc;
+    protected final long end;
+    protected final Section ids;
+    protected final Section nameOffsets;
+    protected final Section outOffsets;
+    protected final Section outTargets;
+    protected final Section outWeights;
+    protected final Section inOffsets;
+    protected final Section inSources;
+    protected final Section inEdges;
+    protected final Section names;
+
+    /**
+     * the MappedSocialGraph constructor reads the header of a snapshot file and maps its sections
+     * @param path of the snapshot file
+     * @throws IOException if the file is not a snapshot, is of another format version or is cut short
+     */
+    protected MappedSocialGraph(Path path) throws IOException{
+	this.path = path;
+	FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+	try{
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	    while(header.hasRemaining() && channel.read(header) >= 0){
+	    }
+	    if(header.hasRemaining() || header.getInt(0) != MAGIC){
+		throw new IOException(path + " is not a social graph snapshot");
+	    }
+	    if(header.getInt(4) != VERSION){
+		throw new IOException(path + " has snapshot format version " + header.getInt(4) + ", expected " +
+				      VERSION);
+	    }
+	    n = header.getInt(8);
+	    m = header.getInt(12);
+	    poolSize = header.getLong(16);
+	    crc = header.getLong(CRC_POSITION);
+	    long[] sizes = sizes(n, m, poolSize);
+	    long[] starts = layout(sizes);
+	    end = starts[sizes.length];
+	    if(channel.size() != end){
+		throw new IOException(path + " is " + channel.size() + " bytes, expected " + end);
+	    }
+	    ids = new Section(channel, starts[0], sizes[0]);
+	    nameOffsets = new Section(channel, starts[1], sizes[1]);
+	    outOffsets = new Section(channel, starts[2], sizes[2]);
+	    outTargets = new Section(channel, starts[3], sizes[3]);
+	    outWeights = new Section(channel, starts[4], sizes[4]);
+	    inOffsets = new Section(channel, starts[5], sizes[5]);
+	    inSources = new Section(channel, starts[6], sizes[6]);
+	    inEdges = new Section(channel, starts[7], sizes[7]);
+	    names = new Section(channel, starts[8], sizes[8]);
+	}
+	finally{
+	    channel.close();
+	}
+    }
+
+    /**
+     * open maps a snapshot file written by save
+     * @param path of the snapshot file
+     * @return read-only graph over the file
+     * @throws IOException if the file cannot be opened or is not a snapshot of this format version
+     */
+    public static MappedSocialGraph open(Path path) throws IOException{
+	return new MappedSocialGraph(path);
+    }
+
+    /**
+     * sizes returns the size of every section of a snapshot without the padding after it
+     * @param n number of vertices
+     * @param m number of edges
+     * @param poolSize bytes in the name pool
+     * @return size of each of the nine sections in bytes
+     */
+    protected static long[] sizes(int n, int m, long poolSize){
+	long[] sizes = {8L * n, 4L * (n + 1), 4L * (n + 1), 4L * m, 4L * m, 4L * (n + 1), 4L * m, 4L * m, poolSize};
+	return sizes;
+    }
+
+    /**
+     * layout works out where every section of a snapshot starts, each on an 8 byte boundary
+     * @param sizes of the sections
+     * @return the start of each section followed by the end of the file
+     */
+    protected static long[] layout(long[] sizes){
+	long[] starts = new long[sizes.length + 1];
+	long position = HEADER_SIZE;
+	for(int s = 0; s < sizes.length; s++){
+	    starts[s] = position;
+	    position = (position + sizes[s] + 7) & ~7L;
+	}
+	starts[sizes.length] = starts[sizes.length - 1] + sizes[sizes.length - 1];
+	return starts;
+    }
+
+    /**
+     * The Section class is one section of the file mapped read-only in windows of WINDOW_SIZE bytes, read by element
+     * index
+     */
+    protected static class Section{
+
+	protected final ByteBuffer[] windows;
+
+	/**
+	 * the Section constructor maps a section of the file
+	 * @param channel of the file
+	 * @param start of the section
+	 * @param size of the section
+	 * @throws IOException if the section cannot be mapped
+	 */
+	protected Section(FileChannel channel, long start, long size) throws IOException{
+	    windows = new ByteBuffer[(int) Math.max(1, (size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+	    for(int w = 0; w < windows.length; w++){
+		long from = (long) w << WINDOW_SHIFT;
+		windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start + from, Math.min(WINDOW_SIZE, size - from));
+	    }
+	}
+
+	/**
+	 * get, getInt, getFloat and getLong read the element at an index of a byte, int, float or long section
+	 * @param index of the element
+	 * @return element
+	 */
+	protected byte get(int index){
+	    return windows[index >>> WINDOW_SHIFT].get(index & (int) (WINDOW_SIZE - 1));
+	}
+
+	protected int getInt(int index){
+	    long position = 4L * index;
+	    return windows[(int) (position >>> WINDOW_SHIFT)].getInt((int) (position & (WINDOW_SIZE - 1)));
+	}
+
+	protected float getFloat(int index){
+	    long position = 4L * index;
+	    return windows[(int) (position >>> WINDOW_SHIFT)].getFloat((int) (position & (WINDOW_SIZE - 1)));
+	}
+
+	protected long getLong(int index){
+	    long position = 8L * index;
+	    return windows[(int) (position >>> WINDOW_SHIFT)].getLong((int) (position & (WINDOW_SIZE - 1)));
+	}
+
+	/**
+	 * copyInts and copyFloats read the first length elements of an int or float section into an array, one window
+	 * at a time
+	 * @param length number of elements
+	 * @return array
+	 */
+	protected int[] copyInts(int length){
+	    int[] result = new int[length];
+	    int done = 0;
+	    for(int w = 0; done < length; w++){
+		int count = Math.min(length - done, windows[w].capacity() / 4);
+		windows[w].duplicate().asIntBuffer().get(result, done, count);
+		done += count;
+	    }
+	    return result;
+	}
+
+	protected float[] copyFloats(int length){
+	    float[] result = new float[length];
+	    int done = 0;
+	    for(int w = 0; done < length; w++){
+		int count = Math.min(length - done, windows[w].capacity() / 4);
+		windows[w].duplicate().asFloatBuffer().get(result, done, count);
+		done += count;
+	    }
+	    return result;
+	}
+    }
+
+    /**
+     * save writes a snapshot file for a graph snapshot. The file is written next to the target and moved over it
+     * once it is complete, so a reader never sees half a snapshot
+     * @param snapshot of a social graph
+     * @param path of the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(GraphSnapshot<String> snapshot, Path path) throws IOException{
+	int n = snapshot.size();
+	int m = snapshot.edgeCount();
+	byte[][] encoded = new byte[n][];
+	long poolSize = 0;
+	for(int i = 0; i < n; i++){
+	    String name = snapshot.getData(i);
+	    encoded[i] = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+	    poolSize += encoded[i].length;
+	}
+	if(poolSize > Integer.MAX_VALUE){
+	    throw new IOException("names take more than 2GB");
+	}
+	long[] sizes = sizes(n, m, poolSize);
+	long[] starts = layout(sizes);
+
+	Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+	FileOutputStream file = new FileOutputStream(temporary.toFile());
+	try{
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	    header.putInt(0, MAGIC);
+	    header.putInt(4, VERSION);
+	    header.putInt(8, n);
+	    header.putInt(12, m);
+	    header.putLong(16, poolSize);
+	    file.write(header.array());
+	    CRC32 checksum = new CRC32();
+	    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, checksum),
+										1 << 16));
+	    for(int i = 0; i < n; i++){
+		out.writeLong(snapshot.idOf(i));
+	    }
+	    pad(out, starts, sizes, 0);
+	    int offset = 0;
+	    for(int i = 0; i < n; i++){
+		out.writeInt(offset);
+		offset += encoded[i].length;
+	    }
+	    out.writeInt(offset);
+	    pad(out, starts, sizes, 1);
+	    for(int i = 0; i < n; i++){
+		out.writeInt(snapshot.outStart(i));
+	    }
+	    out.writeInt(m);
+	    pad(out, starts, sizes, 2);
+	    for(int slot = 0; slot < m; slot++){
+		out.writeInt(snapshot.target(slot));
+	    }
+	    pad(out, starts, sizes, 3);
+	    for(int slot = 0; slot < m; slot++){
+		out.writeFloat(snapshot.weight(slot));
+	    }
+	    pad(out, starts, sizes, 4);
+	    for(int i = 0; i < n; i++){
+		out.writeInt(snapshot.inStart(i));
+	    }
+	    out.writeInt(m);
+	    pad(out, starts, sizes, 5);
+	    for(int slot = 0; slot < m; slot++){
+		out.writeInt(snapshot.source(slot));
+	    }
+	    pad(out, starts, sizes, 6);
+	    for(int slot = 0; slot < m; slot++){
+		out.writeInt(snapshot.inEdge(slot));
+	    }
+	    pad(out, starts, sizes, 7);
+	    for(int i = 0; i < n; i++){
+		out.write(encoded[i]);
+	    }
+	    out.flush();
+	    FileChannel channel = file.getChannel();
+	    ByteBuffer value = ByteBuffer.allocate(8);
+	    value.putLong(0, checksum.getValue());
+	    channel.write(value, CRC_POSITION);
+	    channel.force(true);
+	}
+	finally{
+	    file.close();
+	}
+	Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * pad writes the zeros between the end of a section and the start of the next one
+     * @param out stream positioned at the end of the section
+     * @param starts section starts from layout
+     * @param sizes of the sections
+     * @param section number of the section just written
+     * @throws IOException if the file cannot be written
+     */
+    protected static void pad(DataOutputStream out, long[] starts, long[] sizes, int section) throws IOException{
+	for(long i = starts[section] + sizes[section]; i < starts[section + 1]; i++){
+	    out.write(0);
+	}
+    }
+
+    /**
+     * verify reads the whole file and checks it against the checksum in its header
+     * @throws IOException if the file cannot be read or does not match its checksum
+     */
+    public void verify() throws IOException{
+	CRC32 checksum = new CRC32();
+	FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+	try{
+	    long position = HEADER_SIZE;
+	    while(position < end){
+		long length = Math.min(end - position, 1L << 30);
+		checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+		position += length;
+	    }
+	}
+	finally{
+	    channel.close();
+	}
+	if(checksum.getValue() != crc){
+	    throw new IOException(path + " does not match its checksum");
+	}
+    }
+
+    /**
+     * size returns the number of vertices
+     * @return number of vertices
+     */
+    public int size(){
+	return n;
+    }
+
+    /**
+     * edgeCount returns the number of edges
+     * @return number of edges
+     */
+    public int edgeCount(){
+	return m;
+    }
+
+    /**
+     * indexOf returns the dense index of an id with a binary search of the id table
+     * @param id
+     * @return dense index or -1 if the id is not in the graph
+     */
+    public int indexOf(long id){
+	int low = 0;
+	int high = n - 1;
+	while(low <= high){
+	    int mid = (low + high) >>> 1;
+	    long value = ids.getLong(mid);
+	    if(value < id){
+		low = mid + 1;
+	    }
+	    else if(value > id){
+		high = mid - 1;
+	    }
+	    else{
+		return mid;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * idOf returns the id of the vertex with a given dense index
+     * @param index
+     * @return id
+     */
+    public long idOf(int index){
+	return ids.getLong(index);
+    }
+
+    /**
+     * nameOf returns the name of the vertex with a given dense index, decoded from the name pool
+     * @param index
+     * @return name
+     */
+    public String nameOf(int index){
+	int start = nameOffsets.getInt(index);
+	byte[] bytes = new byte[nameOffsets.getInt(index + 1) - start];
+	for(int i = 0; i < bytes.length; i++){
+	    bytes[i] = names.get(start + i);
+	}
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * getIDs returns an array of all the ids in the graph in ascending order
+     * @return array of all ids
+     */
+    public long[] getIDs(){
+	long[] result = new long[n];
+	for(int i = 0; i < n; i++){
+	    result[i] = ids.getLong(i);
+	}
+	return result;
+    }
+
+    /**
+     * getName takes an id and returns the name of the vertex with that id
+     * @param id
+     * @return name, or null if the id is not in the graph
+     */
+    public String getName(long id){
+	int index = indexOf(id);
+	if(index < 0){
+	    return null;
+	}
+	return nameOf(index);
+    }
+
+    /**
+     * getFollows returns the ids of the accounts a given account follows
+     * @param id
+     * @return array of ids, or null if the id is not in the graph
+     */
+    public long[] getFollows(long id){
+	int index = indexOf(id);
+	if(index < 0){
+	    return null;
+	}
+	int start = outOffsets.getInt(index);
+	long[] result = new long[outOffsets.getInt(index + 1) - start];
+	for(int i = 0; i < result.length; i++){
+	    result[i] = ids.getLong(outTargets.getInt(start + i));
+	}
+	return result;
+    }
+
+    /**
+     * getFollowers returns the ids of the accounts that follow a given account
+     * @param id
+     * @return array of ids, or null if the id is not in the graph
+     */
+    public long[] getFollowers(long id){
+	int index = indexOf(id);
+	if(index < 0){
+	    return null;
+	}
+	int start = inOffsets.getInt(index);
+	long[] result = new long[inOffsets.getInt(index + 1) - start];
+	for(int i = 0; i < result.length; i++){
+	    result[i] = ids.getLong(inSources.getInt(start + i));
+	}
+	return result;
+    }
+
+    /**
+     * getLikes returns the number of times one account liked another, found with a binary search of the liker's
+     * sorted outgoing slice
+     * @param id1 the account doing the liking
+     * @param id2 the account being liked
+     * @return the number of times id1 liked id2
+     */
+    public float getLikes(long id1, long id2){
+	int source = indexOf(id1);
+	int target = indexOf(id2);
+	if(source < 0 || target < 0){
+	    return 0;
+	}
+	int low = outOffsets.getInt(source);
+	int high = outOffsets.getInt(source + 1) - 1;
+	while(low <= high){
+	    int mid = (low + high) >>> 1;
+	    int value = outTargets.getInt(mid);
+	    if(value < target){
+		low = mid + 1;
+	    }
+	    else if(value > target){
+		high = mid - 1;
+	    }
+	    else{
+		return outWeights.getFloat(mid) - 1;
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * toSnapshot copies the file into a GraphSnapshot for the analytics. The snapshot has no edge objects, so it
+     * gives distances and scores but not paths of edges
+     * @return snapshot
+     */
+    public GraphSnapshot<String> toSnapshot(){
+	long[] idArray = getIDs();
+	Object[] data = new Object[n];
+	for(int i = 0; i < n; i++){
+	    data[i] = nameOf(i);
+	}
+	return new GraphSnapshot<String>(idArray, data, outOffsets.copyInts(n + 1), outTargets.copyInts(m),
+					 outWeights.copyFloats(m), null, inOffsets.copyInts(n + 1),
+					 inSources.copyInts(m), inWeights(), inEdges.copyInts(m));
+    }
+
+    /**
+     * inWeights returns the weight of every incoming slot, looked up through the outgoing slot of the same edge
+     * @return array
+     */
+    protected float[] inWeights(){
+	float[] result = new float[m];
+	for(int slot = 0; slot < m; slot++){
+	    result[slot] = outWeights.getFloat(inEdges.getInt(slot));
+	}
+	return result;
+    }
+
+    /**
+     * toSocialGraph makes an ordinary SocialGraph with vertex and edge objects from the file, which can then be
+     * changed
+     * @return graph
+     */
+    @SuppressWarnings("unchecked")
+    public SocialGraph toSocialGraph(){
+	SocialGraph graph = new SocialGraph();
+	Vertex<String>[] vertices = new Vertex[n];
+	for(int i = 0; i < n; i++){
+	    vertices[i] = new Vertex<String>(nameOf(i), ids.getLong(i));
+	    graph.addVertex(vertices[i].getId(), vertices[i]);
+	}
+	Edge<String>[] edges = new Edge[m];
+	for(int i = 0; i < n; i++){
+	    for(int slot = outOffsets.getInt(i); slot < outOffsets.getInt(i + 1); slot++){
+		edges[slot] = new Edge<String>(vertices[i], vertices[outTargets.getInt(slot)], outWeights.getFloat(slot));
+		vertices[i].addOutgoing(edges[slot]);
+	    }
+	}
+	for(int i = 0; i < n; i++){
+	    for(int slot = inOffsets.getInt(i); slot < inOffsets.getInt(i + 1); slot++){
+		vertices[i].addIncoming(edges[inEdges.getInt(slot)]);
+	    }
+	}
+	return graph;
+    }
+
+}
@@ -0,0 +1,345 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The PageRank class ranks the vertices of a graph snapshot by PageRank, with edge weights as transition weights:
+ * a walker at u follows an edge with probability damping times the edge's share of u's total outgoing weight, and
+ * otherwise jumps. On a SocialGraph an account passes more of its rank to the accounts it likes more. Vertices with
+ * no outgoing weight spread their rank over every vertex.
+ *
+ * rank runs power iteration in pull form: each vertex sums what its in-neighbors send it straight from the incoming
+ * slices of the snapshot, so every vertex is written by one thread only and no atomics are needed. Each iteration
+ * is two parallel sweeps over vertex ranges, one working out what every vertex sends and one pulling it in, and the
+ * iteration stops once the ranks change by less than the tolerance in total.
+ *
+ * personalized ranks vertices for one seed, the walker jumping back to the seed instead of anywhere, with the
+ * forward push of Andersen, Chung and Lang. It only touches the neighborhood of the seed where rank is worth
+ * pushing, so it answers in milliseconds on graphs of any size, to within epsilon times a vertex's out degree
+ */
+
+public class PageRank<T>{
+
+    public static final double DAMPING = 0.85;
+    public static final double TOLERANCE = 1e-6;
+    public static final double EPSILON = 1e-7;
+    public static final int MAX_ITERATIONS = 100;
+
+    //phases of a Sweep
+    protected static final int SEND = 0;
+    protected static final int PULL = 1;
+
+    protected final GraphSnapshot<T> snapshot;
+    //total weight of every vertex's outgoing edges
+    protected final double[] outWeight;
+    //per-thread arrays for personalized queries
+    protected final ThreadLocal<Push> pushes;
+    //state of the running power iteration
+    protected double damping;
+    protected double[] rank;
+    protected double[] next;
+    protected double[] send;
+    protected int iterations;
+
+    /**
+     * the PageRank constructor takes the snapshot to rank
+     * @param snapshot of the graph
+     */
+    public PageRank(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+	int n = snapshot.size();
+	outWeight = new double[n];
+	for(int v = 0; v < n; v++){
+	    for(int slot = snapshot.outStart(v); slot < snapshot.outEnd(v); slot++){
+		outWeight[v] += snapshot.weight(slot);
+	    }
+	}
+	pushes = new ThreadLocal<Push>(){
+	    protected Push initialValue(){
+		return new Push();
+	    }
+	};
+    }
+
+    /**
+     * rank finds the PageRank of every vertex with the default damping, tolerance and iteration limit
+     * @return ranks by dense index, summing to 1
+     */
+    public double[] rank(){
+	return rank(DAMPING, TOLERANCE, MAX_ITERATIONS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * rank finds the PageRank of every vertex by power iteration
+     * @param damping probability of following an edge rather than jumping, usually 0.85
+     * @param tolerance stop once the ranks change by less than this in total
+     * @param maxIterations stop after this many iterations even if the ranks are still changing
+     * @param pool to run the sweeps on
+     * @return ranks by dense index, summing to 1
+     */
+    public synchronized double[] rank(double damping, double tolerance, int maxIterations, ForkJoinPool pool){
+	int n = snapshot.size();
+	if(n == 0){
+	    return new double[0];
+	}
+	this.damping = damping;
+	rank = new double[n];
+	next = new double[n];
+	send = new double[n];
+	Arrays.fill(rank, 1.0 / n);
+	int leaf = Math.max(1024, n / (pool.getParallelism() * 8));
+	iterations = 0;
+	while(iterations < maxIterations){
+	    double dangling = pool.invoke(new Sweep(SEND, 0, n, leaf, 0));
+	    //rank that jumps, from damping and from vertices with nowhere to go, is shared by everyone
+	    double base = (1 - damping) / n + damping * dangling / n;
+	    double change = pool.invoke(new Sweep(PULL, 0, n, leaf, base));
+	    double[] swap = rank;
+	    rank = next;
+	    next = swap;
+	    iterations++;
+	    if(change < tolerance){
+		break;
+	    }
+	}
+	double[] result = rank;
+	rank = null;
+	next = null;
+	send = null;
+	return result;
+    }
+
+    /**
+     * getIterations returns how many iterations the last call to rank took
+     * @return iterations
+     */
+    public int getIterations(){
+	return iterations;
+    }
+
+    /**
+     * The Sweep class runs one phase of an iteration over a range of vertices, splitting it in half until it is
+     * small enough for one thread. SEND works out what each vertex sends per unit of edge weight and returns the
+     * rank of the vertices with nowhere to send it; PULL sums what each vertex is sent and returns the total change
+     */
+    protected class Sweep extends RecursiveTask<Double>{
+
+	protected final int phase;
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+	protected final double base;
+
+	protected Sweep(int phase, int start, int end, int leaf, double base){
+	    this.phase = phase;
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	    this.base = base;
+	}
+
+	protected Double compute(){
+	    if(end - start > leaf){
+		int mid = (start + end) >>> 1;
+		Sweep left = new Sweep(phase, start, mid, leaf, base);
+		left.fork();
+		double right = new Sweep(phase, mid, end, leaf, base).compute();
+		return left.join() + right;
+	    }
+	    double total = 0;
+	    if(phase == SEND){
+		for(int v = start; v < end; v++){
+		    if(outWeight[v] > 0){
+			send[v] = rank[v] / outWeight[v];
+		    }
+		    else{
+			send[v] = 0;
+			total += rank[v];
+		    }
+		}
+	    }
+	    else{
+		int[] offsets = snapshot.inOffsets;
+		int[] sources = snapshot.inSources;
+		float[] weights = snapshot.inWeights;
+		for(int v = start; v < end; v++){
+		    double sum = 0;
+		    for(int slot = offsets[v]; slot < offsets[v + 1]; slot++){
+			sum += send[sources[slot]] * weights[slot];
+		    }
+		    next[v] = base + damping * sum;
+		    total += Math.abs(next[v] - rank[v]);
+		}
+	    }
+	    return total;
+	}
+    }
+
+    /**
+     * The Result class holds the best ranked vertices of a personalized query, best first, and their scores
+     */
+    public static class Result{
+
+	protected final long[] ids;
+	protected final double[] scores;
+
+	protected Result(long[] ids, double[] scores){
+	    this.ids = ids;
+	    this.scores = scores;
+	}
+
+	/**
+	 * getIds returns the ids of the best ranked vertices, best first
+	 * @return ids
+	 */
+	public long[] getIds(){
+	    return ids;
+	}
+
+	/**
+	 * getScores returns the personalized PageRank of each vertex
+	 * @return scores in the same order as the ids
+	 */
+	public double[] getScores(){
+	    return scores;
+	}
+    }
+
+    /**
+     * personalized approximates the PageRank of every vertex for walkers that jump back to a seed vertex, with the
+     * default damping and epsilon
+     * @param seedId id of the seed
+     * @param k most vertices to return
+     * @return the k best ranked vertices, or null if there is no such seed
+     */
+    public Result personalized(long seedId, int k){
+	return personalized(seedId, DAMPING, EPSILON, k);
+    }
+
+    /**
+     * personalized approximates the PageRank of every vertex for walkers that always jump back to a seed vertex
+     * @param seedId id of the seed
+     * @param damping probability of following an edge rather than jumping back
+     * @param epsilon rank per unit of out degree left unpushed, smaller is slower and more exact
+     * @param k most vertices to return
+     * @return the k best ranked vertices, or null if there is no such seed
+     */
+    public Result personalized(long seedId, double damping, double epsilon, int k){
+	int seed = snapshot.indexOf(seedId);
+	if(seed < 0){
+	    return null;
+	}
+	return pushes.get().run(seed, damping, epsilon, k);
+    }
+
+    /**
+     * The Push class holds the arrays one thread pushes with. Only the entries touched by the last query are reset
+     */
+    protected class Push{
+
+	//rank settled so far and rank waiting to be pushed, by dense index
+	protected final double[] estimate;
+	protected final double[] residual;
+	protected final int[] touched;
+	protected int touchedSize;
+	protected final boolean[] queued;
+	//circular queue of vertices whose residual is big enough to push; each is in it at most once
+	protected final int[] queue;
+
+	protected Push(){
+	    int n = snapshot.size();
+	    estimate = new double[n];
+	    residual = new double[n];
+	    touched = new int[n];
+	    queued = new boolean[n];
+	    queue = new int[n];
+	}
+
+	/**
+	 * touch records that a vertex has state to reset
+	 * @param v dense index
+	 */
+	protected void touch(int v){
+	    if(estimate[v] == 0 && residual[v] == 0){
+		touched[touchedSize++] = v;
+	    }
+	}
+
+	/**
+	 * run pushes rank out from the seed until no vertex has more than epsilon times its out degree left
+	 * @param seed dense index
+	 * @param damping probability of following an edge
+	 * @param epsilon residual per unit of out degree allowed to stay
+	 * @param k most vertices to return
+	 * @return the k best ranked vertices
+	 */
+	protected Result run(int seed, double damping, double epsilon, int k){
+	    int n = snapshot.size();
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    float[] weights = snapshot.outWeights;
+	    touchedSize = 0;
+	    touch(seed);
+	    residual[seed] = 1;
+	    int head = 0;
+	    int size = 1;
+	    queue[0] = seed;
+	    queued[seed] = true;
+	    while(size > 0){
+		int u = queue[head];
+		head = head + 1 == n ? 0 : head + 1;
+		size--;
+		queued[u] = false;
+		double mass = residual[u];
+		residual[u] = 0;
+		estimate[u] += (1 - damping) * mass;
+		double spread = damping * mass;
+		if(outWeight[u] == 0){
+		    //nowhere to go, so the walker jumps back to the seed
+		    residual[seed] += spread;
+		    if(!queued[seed] && residual[seed] > epsilon * Math.max(1, offsets[seed + 1] - offsets[seed])){
+			queue[(head + size) % n] = seed;
+			queued[seed] = true;
+			size++;
+		    }
+		    continue;
+		}
+		double perWeight = spread / outWeight[u];
+		for(int slot = offsets[u]; slot < offsets[u + 1]; slot++){
+		    int v = targets[slot];
+		    touch(v);
+		    residual[v] += perWeight * weights[slot];
+		    if(!queued[v] && residual[v] > epsilon * Math.max(1, offsets[v + 1] - offsets[v])){
+			queue[(head + size) % n] = v;
+			queued[v] = true;
+			size++;
+		    }
+		}
+	    }
+	    //sort by estimate rounded to a float, best first and ties to the smaller index, then reset what was touched
+	    long[] keys = new long[touchedSize];
+	    int count = 0;
+	    for(int i = 0; i < touchedSize; i++){
+		int v = touched[i];
+		if(estimate[v] > 0){
+		    keys[count++] = ((long) Float.floatToIntBits((float) estimate[v]) << 32) | (~v & 0xFFFFFFFFL);
+		}
+	    }
+	    Arrays.sort(keys, 0, count);
+	    int found = Math.min(Math.max(k, 0), count);
+	    long[] ids = new long[found];
+	    double[] scores = new double[found];
+	    for(int i = 0; i < found; i++){
+		int v = ~(int) keys[count - 1 - i];
+		ids[i] = snapshot.idOf(v);
+		scores[i] = estimate[v];
+	    }
+	    for(int i = 0; i < touchedSize; i++){
+		estimate[touched[i]] = 0;
+		residual[touched[i]] = 0;
+	    }
+	    return new Result(ids, scores);
+	}
+    }
+
+}
@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The PathIterator class walks the simple paths (no vertex twice) from one vertex of a graph snapshot to another,
+ * handing out one path at a time as it finds them. The depth first search runs on an explicit stack holding, for
+ * each step of the current path, its vertex, the next outgoing slot to try and the cost so far, and vertices on the
+ * current path are marked in a bitset. Memory is the length of the current path plus one bit per vertex, however
+ * many paths there are, and a caller that has seen enough can stop asking.
+ *
+ * Paths can be limited to a number of edges, a total weight and a number of paths. The weight limit prunes every
+ * partial path that already costs more, which is only right when no edge weight is negative
+ */
+
+public class PathIterator<T> implements Iterator<ArrayList<Edge<T>>>{
+
+    protected final GraphSnapshot<T> snapshot;
+    protected final int start;
+    protected final int end;
+    protected final int maxDepth;
+    protected final long maxPaths;
+    protected double maxWeight;
+    //vertices on the current path
+    protected final long[] onPath;
+    //for each step of the current path: its vertex, the next out slot to try from it and the cost to reach it
+    protected int[] vertices;
+    protected int[] cursor;
+    protected double[] cost;
+    //slot of the edge taken out of each step
+    protected int[] slots;
+    //index of the last vertex on the current path, -1 once the search is over
+    protected int depth;
+    //edges and cost of the path found but not handed out yet, -1 if there is none
+    protected int pendingLength;
+    protected double pendingCost;
+    protected double lastCost;
+    protected long returned;
+
+    /**
+     * the PathIterator constructor takes the snapshot and the ends of the paths, without limits
+     * @param snapshot of the graph
+     * @param startId id of the first vertex of every path
+     * @param endId id of the last vertex of every path
+     */
+    public PathIterator(GraphSnapshot<T> snapshot, long startId, long endId){
+	this(snapshot, startId, endId, Integer.MAX_VALUE, Long.MAX_VALUE, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * the PathIterator constructor takes the snapshot, the ends of the paths and the limits on them
+     * @param snapshot of the graph
+     * @param startId id of the first vertex of every path
+     * @param endId id of the last vertex of every path
+     * @param maxDepth most edges on a path
+     * @param maxPaths most paths to hand out
+     * @param maxWeight largest total weight of a path
+     */
+    public PathIterator(GraphSnapshot<T> snapshot, long startId, long endId, int maxDepth, long maxPaths,
+			double maxWeight){
+	this.snapshot = snapshot;
+	this.start = snapshot.indexOf(startId);
+	this.end = snapshot.indexOf(endId);
+	this.maxDepth = maxDepth;
+	this.maxPaths = maxPaths;
+	this.maxWeight = maxWeight;
+	onPath = new long[(snapshot.size() + 63) >>> 6];
+	vertices = new int[16];
+	cursor = new int[16];
+	cost = new double[16];
+	slots = new int[16];
+	pendingLength = -1;
+	depth = -1;
+	if(start < 0 || end < 0){
+	    return;
+	}
+	if(start == end){
+	    //the only simple path from a vertex to itself has no edges
+	    if(maxDepth >= 0){
+		pendingLength = 0;
+	    }
+	    pendingCost = 0;
+	    return;
+	}
+	depth = 0;
+	vertices[0] = start;
+	cursor[0] = snapshot.outStart(start);
+	cost[0] = 0;
+	mark(start);
+    }
+
+    protected void mark(int v){
+	onPath[v >>> 6] |= 1L << v;
+    }
+
+    protected void unmark(int v){
+	onPath[v >>> 6] &= ~(1L << v);
+    }
+
+    protected boolean marked(int v){
+	return (onPath[v >>> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * setMaxWeight changes the largest total weight of the paths still to come. Lowering it as cheaper paths turn
+     * up, as a search for the cheapest paths would, prunes the rest of the search
+     * @param maxWeight largest total weight of a path
+     */
+    public void setMaxWeight(double maxWeight){
+	this.maxWeight = maxWeight;
+    }
+
+    /**
+     * advance runs the search until it finds the next path
+     * @return true if a path was found
+     */
+    protected boolean advance(){
+	while(depth >= 0){
+	    int v = vertices[depth];
+	    if(cursor[depth] == snapshot.outEnd(v)){
+		//every edge out of v is done, step back
+		unmark(v);
+		depth--;
+		continue;
+	    }
+	    int slot = cursor[depth]++;
+	    int w = snapshot.target(slot);
+	    if(marked(w)){
+		continue;
+	    }
+	    double reached = cost[depth] + snapshot.weight(slot);
+	    if(reached > maxWeight){
+		continue;
+	    }
+	    //a path through this edge would have at least depth + 1 edges
+	    if(depth + 1 > maxDepth){
+		continue;
+	    }
+	    slots[depth] = slot;
+	    if(w == end){
+		pendingLength = depth + 1;
+		pendingCost = reached;
+		return true;
+	    }
+	    //a path through w would have at least depth + 2 edges
+	    if(depth + 2 > maxDepth){
+		continue;
+	    }
+	    depth++;
+	    if(depth == vertices.length){
+		vertices = Arrays.copyOf(vertices, depth * 2);
+		cursor = Arrays.copyOf(cursor, depth * 2);
+		cost = Arrays.copyOf(cost, depth * 2);
+		slots = Arrays.copyOf(slots, depth * 2);
+	    }
+	    vertices[depth] = w;
+	    cursor[depth] = snapshot.outStart(w);
+	    cost[depth] = reached;
+	    mark(w);
+	}
+	return false;
+    }
+
+    /**
+     * hasNext returns whether there is another path within the limits
+     * @return true if next will return a path
+     */
+    public boolean hasNext(){
+	if(returned >= maxPaths){
+	    return false;
+	}
+	return pendingLength >= 0 || advance();
+    }
+
+    /**
+     * next returns the next path
+     * @return new list of the path's edges from start to end
+     */
+    public ArrayList<Edge<T>> next(){
+	if(!hasNext()){
+	    throw new NoSuchElementException();
+	}
+	ArrayList<Edge<T>> path = new ArrayList<Edge<T>>(pendingLength);
+	for(int i = 0; i < pendingLength; i++){
+	    path.add(snapshot.getEdge(slots[i]));
+	}
+	lastCost = pendingCost;
+	pendingLength = -1;
+	returned++;
+	return path;
+    }
+
+    /**
+     * getCost returns the total weight of the path next returned last
+     * @return cost
+     */
+    public double getCost(){
+	return lastCost;
+    }
+
+    public void remove(){
+	throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,262 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The QueryCache class sits in front of a SocialGraph and keeps the results of getFollows, getFollowers and
+ * getShortestPath so repeated questions are answered without allocating or searching again. Entries live in an
+ * access ordered LinkedHashMap, so the least recently used ones are evicted first once the total weight of the
+ * cache passes its limit. An entry weighs one plus the number of ids or edges it holds.
+ *
+ * Entries are checked before they are handed out instead of being thrown out when the graph changes:
+ * - a follows list records the vertex and its outgoing version
+ * - a followers list records the vertex and its incoming version
+ * - a path records the graph's modCount, since any change anywhere can move a shortest path
+ *
+ * So adding or removing one account's edges only invalidates that account's lists and the cached paths. Likes
+ * change path costs, and every weight change bumps the modCount however it is made, so they invalidate the paths.
+ *
+ * Cached arrays and lists are shared between callers and must not be changed. The cache is synchronized, but the
+ * graph is not, so the graph must not be changed while a query is running
+ */
+
+public class QueryCache{
+
+    protected static final int FOLLOWS = 0;
+    protected static final int FOLLOWERS = 1;
+    protected static final int PATH = 2;
+
+    protected final SocialGraph graph;
+    protected final long maxWeight;
+    protected final LinkedHashMap<Key, Entry> entries;
+    protected long weight;
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+    protected long invalidations;
+
+    /**
+     * the QueryCache constructor takes the graph to answer from and the largest total weight to keep
+     * @param graph to query
+     * @param maxWeight the most ids and edges, plus one per entry, the cache holds
+     */
+    public QueryCache(SocialGraph graph, long maxWeight){
+	this.graph = graph;
+	this.maxWeight = maxWeight;
+	entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    }
+
+    /**
+     * getFollows returns the ids of the accounts a given account follows
+     * @param id
+     * @return shared array of ids, or null if there is no such account
+     */
+    public synchronized long[] getFollows(long id){
+	Key key = new Key(FOLLOWS, id, 0);
+	Vertex<String> vertex = graph.getVertex(id);
+	int version = vertex == null ? 0 : vertex.getOutVersion();
+	Entry entry = lookup(key, vertex, version);
+	if(entry != null){
+	    return (long[]) entry.value;
+	}
+	long[] follows = graph.getFollows(id);
+	store(key, new Entry(follows, vertex, version, 1 + (follows == null ? 0 : follows.length)));
+	return follows;
+    }
+
+    /**
+     * getFollowers returns the ids of the accounts that follow a given account
+     * @param id
+     * @return shared array of ids, or null if there is no such account
+     */
+    public synchronized long[] getFollowers(long id){
+	Key key = new Key(FOLLOWERS, id, 0);
+	Vertex<String> vertex = graph.getVertex(id);
+	int version = vertex == null ? 0 : vertex.getInVersion();
+	Entry entry = lookup(key, vertex, version);
+	if(entry != null){
+	    return (long[]) entry.value;
+	}
+	long[] followers = graph.getFollowers(id);
+	store(key, new Entry(followers, vertex, version, 1 + (followers == null ? 0 : followers.length)));
+	return followers;
+    }
+
+    /**
+     * getShortestPath returns the shortest path between two accounts, as SocialGraph.getShortestPath does
+     * @param start and end ids
+     * @return shared list of edges, or null if there is no path
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized ArrayList<Edge<String>> getShortestPath(long start, long end){
+	Key key = new Key(PATH, start, end);
+	Entry entry = lookup(key, null, graph.modCount);
+	if(entry != null){
+	    return (ArrayList<Edge<String>>) entry.value;
+	}
+	Vertex<String> from = graph.getVertex(start);
+	Vertex<String> to = graph.getVertex(end);
+	ArrayList<Edge<String>> path = from == null || to == null ? null : graph.getShortestPath(from, to);
+	store(key, new Entry(path, null, graph.modCount, 1 + (path == null ? 0 : path.size())));
+	return path;
+    }
+
+    /**
+     * lookup returns a cached entry if it was made from the same vertex at the same version, and drops it if not
+     * @param key of the query
+     * @param vertex the query depends on now, or null for whole graph queries
+     * @param version of the vertex or graph now
+     * @return entry or null on a miss
+     */
+    protected Entry lookup(Key key, Vertex<String> vertex, int version){
+	Entry entry = entries.get(key);
+	if(entry == null){
+	    misses++;
+	    return null;
+	}
+	if(entry.vertex != vertex || entry.version != version){
+	    entries.remove(key);
+	    weight -= entry.weight;
+	    invalidations++;
+	    misses++;
+	    return null;
+	}
+	hits++;
+	return entry;
+    }
+
+    /**
+     * store adds an entry and evicts the least recently used ones until the cache fits its weight again
+     * @param key of the query
+     * @param entry to add
+     */
+    protected void store(Key key, Entry entry){
+	if(entry.weight > maxWeight){
+	    return;
+	}
+	Entry old = entries.put(key, entry);
+	if(old != null){
+	    weight -= old.weight;
+	}
+	weight += entry.weight;
+	Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+	while(weight > maxWeight){
+	    weight -= eldest.next().getValue().weight;
+	    eldest.remove();
+	    evictions++;
+	}
+    }
+
+    /**
+     * clear drops every entry. The statistics are kept
+     */
+    public synchronized void clear(){
+	entries.clear();
+	weight = 0;
+    }
+
+    /**
+     * size returns the number of cached entries
+     * @return size
+     */
+    public synchronized int size(){
+	return entries.size();
+    }
+
+    /**
+     * getWeight returns the total weight of the cached entries
+     * @return weight
+     */
+    public synchronized long getWeight(){
+	return weight;
+    }
+
+    /**
+     * getHits, getMisses, getEvictions and getInvalidations return how many lookups were answered from the cache,
+     * how many were not, how many entries were evicted to make room and how many were dropped because the graph
+     * changed under them
+     * @return count
+     */
+    public synchronized long getHits(){
+	return hits;
+    }
+
+    public synchronized long getMisses(){
+	return misses;
+    }
+
+    public synchronized long getEvictions(){
+	return evictions;
+    }
+
+    public synchronized long getInvalidations(){
+	return invalidations;
+    }
+
+    /**
+     * getHitRate returns the fraction of lookups answered from the cache
+     * @return hit rate, 0 if there were no lookups
+     */
+    public synchronized double getHitRate(){
+	long lookups = hits + misses;
+	return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * toString overrides object toString
+     * @return String with the size and statistics of the cache
+     */
+    public synchronized String toString(){
+	return "QueryCache[entries=" + entries.size() + ", weight=" + weight + "/" + maxWeight + ", hits=" + hits +
+	    ", misses=" + misses + ", evictions=" + evictions + ", invalidations=" + invalidations + "]";
+    }
+
+    /**
+     * The Key class names one query: its kind and the ids it was asked about
+     */
+    protected static class Key{
+
+	protected final int kind;
+	protected final long a;
+	protected final long b;
+
+	protected Key(int kind, long a, long b){
+	    this.kind = kind;
+	    this.a = a;
+	    this.b = b;
+	}
+
+	public boolean equals(Object other){
+	    if(!(other instanceof Key)){
+		return false;
+	    }
+	    Key key = (Key) other;
+	    return kind == key.kind && a == key.a && b == key.b;
+	}
+
+	public int hashCode(){
+	    long hash = (a * 31 + b) * 31 + kind;
+	    return (int) (hash ^ (hash >>> 32));
+	}
+    }
+
+    /**
+     * The Entry class is one cached result with what it was computed from
+     */
+    protected static class Entry{
+
+	protected final Object value;
+	protected final Vertex<String> vertex;
+	protected final int version;
+	protected final int weight;
+
+	protected Entry(Object value, Vertex<String> vertex, int version, int weight){
+	    this.value = value;
+	    this.vertex = vertex;
+	    this.version = version;
+	    this.weight = weight;
+	}
+    }
+
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The Recommender class suggests accounts to follow ("people you may know") from a graph snapshot. Every two step
+ * path u -> v -> x from an account u to an account x it does not follow yet scores the product of the two edge
+ * weights, so friends of friends reached many ways, or through accounts u and v like a lot, score highest. The top
+ * k by score are returned, ties going to the smaller id.
+ *
+ * Scores are summed in a dense array indexed by vertex along with a list of the entries touched, so resetting after
+ * a query costs only what the query reached, and the top k are kept in a bounded min heap of primitives. Each
+ * thread keeps its arrays between queries, so a query allocates nothing but its result. recommendAll runs every
+ * account in parallel
+ */
+
+public class Recommender<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+    //per-thread scoring arrays, reused between queries
+    protected final ThreadLocal<Scratch> scratches;
+
+    /**
+     * the Recommender constructor takes the snapshot to recommend from
+     * @param snapshot of the graph
+     */
+    public Recommender(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+	scratches = new ThreadLocal<Scratch>(){
+	    protected Scratch initialValue(){
+		return new Scratch();
+	    }
+	};
+    }
+
+    /**
+     * The Result class holds the recommended ids for one account, best first, and their scores
+     */
+    public static class Result{
+
+	protected final long[] ids;
+	protected final double[] scores;
+
+	protected Result(long[] ids, double[] scores){
+	    this.ids = ids;
+	    this.scores = scores;
+	}
+
+	/**
+	 * getIds returns the recommended ids, best first
+	 * @return ids
+	 */
+	public long[] getIds(){
+	    return ids;
+	}
+
+	/**
+	 * getScores returns the score of each recommended id
+	 * @return scores in the same order as the ids
+	 */
+	public double[] getScores(){
+	    return scores;
+	}
+    }
+
+    /**
+     * recommend finds the top k accounts a given account does not follow yet
+     * @param id of the account
+     * @param k most recommendations to return
+     * @return recommendations, or null if there is no such account
+     */
+    public Result recommend(long id, int k){
+	int u = snapshot.indexOf(id);
+	if(u < 0){
+	    return null;
+	}
+	return scratches.get().recommend(u, k);
+    }
+
+    /**
+     * recommendAll finds the top k recommendations for every account in parallel
+     * @param k most recommendations per account
+     * @return recommendations indexed by the dense index of each account
+     */
+    public Result[] recommendAll(int k){
+	return recommendAll(k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * recommendAll finds the top k recommendations for every account in parallel on a given pool
+     * @param k most recommendations per account
+     * @param pool to run on
+     * @return recommendations indexed by the dense index of each account
+     */
+    public Result[] recommendAll(int k, ForkJoinPool pool){
+	int n = snapshot.size();
+	Result[] results = new Result[n];
+	int leaf = Math.max(1, n / (pool.getParallelism() * 8));
+	pool.invoke(new RecommendTask(results, k, 0, n, leaf));
+	return results;
+    }
+
+    /**
+     * The Scratch class holds the arrays one thread scores with. Only the entries touched by the last query are
+     * reset, so it can be reused for any number of queries
+     */
+    protected class Scratch{
+
+	//summed path weights by dense index, and the indices with a score
+	protected final double[] score;
+	protected final int[] touched;
+	protected int touchedSize;
+	//followed[x] == query if the account being scored follows x, reached[x] == query once x has a score, so
+	//neither has to be cleared between queries
+	protected final int[] followed;
+	protected final int[] reached;
+	protected int query;
+	//bounded min heap of the best k so far, worst at the top
+	protected int[] heap;
+	protected int heapSize;
+	protected int k;
+
+	protected Scratch(){
+	    int n = snapshot.size();
+	    score = new double[n];
+	    touched = new int[n];
+	    followed = new int[n];
+	    reached = new int[n];
+	    heap = new int[16];
+	}
+
+	/**
+	 * recommend scores the friends of friends of one account and picks the best k
+	 * @param u dense index of the account
+	 * @param k most recommendations to return
+	 * @return recommendations
+	 */
+	protected Result recommend(int u, int k){
+	    this.k = Math.max(0, k);
+	    if(heap.length < this.k){
+		heap = new int[Math.min(this.k, snapshot.size())];
+	    }
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    float[] weights = snapshot.outWeights;
+	    touchedSize = 0;
+	    query++;
+	    if(query == Integer.MAX_VALUE){
+		Arrays.fill(followed, 0);
+		Arrays.fill(reached, 0);
+		query = 1;
+	    }
+	    for(int slot = offsets[u]; slot < offsets[u + 1]; slot++){
+		followed[targets[slot]] = query;
+	    }
+	    for(int slot = offsets[u]; slot < offsets[u + 1]; slot++){
+		int v = targets[slot];
+		double first = weights[slot];
+		for(int next = offsets[v]; next < offsets[v + 1]; next++){
+		    int x = targets[next];
+		    if(x == u || followed[x] == query){
+			continue;
+		    }
+		    if(reached[x] != query){
+			reached[x] = query;
+			touched[touchedSize++] = x;
+		    }
+		    score[x] += first * weights[next];
+		}
+	    }
+	    heapSize = 0;
+	    for(int i = 0; i < touchedSize; i++){
+		offer(touched[i]);
+	    }
+	    //pop the worst off the top of the heap into the back of the result
+	    long[] ids = new long[heapSize];
+	    double[] scores = new double[heapSize];
+	    for(int i = heapSize - 1; i >= 0; i--){
+		int x = heap[0];
+		ids[i] = snapshot.idOf(x);
+		scores[i] = score[x];
+		heapSize--;
+		heap[0] = heap[heapSize];
+		siftDown(0);
+	    }
+	    for(int i = 0; i < touchedSize; i++){
+		score[touched[i]] = 0;
+	    }
+	    return new Result(ids, scores);
+	}
+
+	/**
+	 * worse returns whether one candidate ranks below another: a lower score, or the same score and a larger
+	 * dense index, which is a larger id
+	 * @param a and b dense indices
+	 * @return true if a ranks below b
+	 */
+	protected boolean worse(int a, int b){
+	    return score[a] < score[b] || (score[a] == score[b] && a > b);
+	}
+
+	/**
+	 * offer adds a candidate to the heap if there is room or it beats the worst one there
+	 * @param x dense index
+	 */
+	protected void offer(int x){
+	    if(heapSize < k && heapSize < heap.length){
+		int i = heapSize++;
+		heap[i] = x;
+		while(i > 0 && worse(heap[i], heap[(i - 1) / 2])){
+		    int parent = (i - 1) / 2;
+		    int swap = heap[i];
+		    heap[i] = heap[parent];
+		    heap[parent] = swap;
+		    i = parent;
+		}
+	    }
+	    else if(heapSize > 0 && worse(heap[0], x)){
+		heap[0] = x;
+		siftDown(0);
+	    }
+	}
+
+	/**
+	 * siftDown moves the entry at a position down until neither child ranks below it
+	 * @param i position in the heap
+	 */
+	protected void siftDown(int i){
+	    while(true){
+		int child = 2 * i + 1;
+		if(child >= heapSize){
+		    return;
+		}
+		if(child + 1 < heapSize && worse(heap[child + 1], heap[child])){
+		    child++;
+		}
+		if(!worse(heap[child], heap[i])){
+		    return;
+		}
+		int swap = heap[i];
+		heap[i] = heap[child];
+		heap[child] = swap;
+		i = child;
+	    }
+	}
+    }
+
+    /**
+     * The RecommendTask class splits a range of accounts in half until it is small enough to score with one Scratch
+     */
+    protected class RecommendTask extends RecursiveAction{
+
+	protected final Result[] results;
+	protected final int k;
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+
+	protected RecommendTask(Result[] results, int k, int start, int end, int leaf){
+	    this.results = results;
+	    this.k = k;
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	}
+
+	protected void compute(){
+	    if(end - start <= leaf){
+		Scratch scratch = scratches.get();
+		for(int u = start; u < end; u++){
+		    results[u] = scratch.recommend(u, k);
+		}
+		return;
+	    }
+	    int mid = (start + end) >>> 1;
+	    invokeAll(new RecommendTask(results, k, start, mid, leaf), new RecommendTask(results, k, mid, end, leaf));
+	}
+    }
+
+}
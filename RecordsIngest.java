@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The RecordsIngest class loads a records file on several threads. The file is memory mapped and cut into chunks
+ * whose newlines are counted in parallel; since every record is exactly four lines, the number of newlines before a
+ * chunk tells where the first record starting inside it begins, and each chunk is moved to start there. The chunks
+ * are then parsed in parallel. Vertices are put into the graph in file order in one pass, after which every chunk
+ * adds the follow edges and likes of its own accounts, which no other thread touches, and sorts each edge into a
+ * bucket picked by its sink. Last, every bucket partition adds the incoming edges of the sinks it owns. No step
+ * takes a lock shared between the workers.
+ *
+ * A malformed record does not stop the load. It is skipped and reported as a MalformedRecordException carrying the
+ * file offset of the bad line. Repeated ids and ids with no record are handled as RecordsReader handles them, so both
+ * loaders build the same graph from a file they can both read; the difference is that RecordsReader stops at a line
+ * it cannot parse, where this skips the record
+ */
+
+public class RecordsIngest{
+
+    //raw chunk size before alignment, well under the 2GB limit of one mapping
+    protected static final long MAX_CHUNK = 1L << 28;
+
+    protected final String fileName;
+    protected final int threads;
+    protected ForkJoinPool pool;
+    protected long fileSize;
+    //raw chunk boundaries and the newlines in each raw chunk
+    protected long[] rawStarts;
+    protected long[] newlines;
+    //record aligned chunk boundaries, starts[count] is the file size
+    protected long[] starts;
+    protected Chunk[] chunks;
+    //dense index of every account by id and the vertices in that order
+    protected LongIntHashMap index;
+    protected Vertex<String>[] accounts;
+
+    /**
+     * the RecordsIngest constructor takes the file to load and the number of threads to load it with
+     * @param fileName of the records file
+     * @param threads to use
+     */
+    public RecordsIngest(String fileName, int threads){
+	this.fileName = fileName;
+	this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * load reads the whole file into a graph
+     * @param graph empty graph to add the accounts to
+     * @return the malformed records that were skipped, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public ArrayList<MalformedRecordException> load(SocialGraph graph) throws IOException{
+	RandomAccessFile file = new RandomAccessFile(fileName, "r");
+	pool = new ForkJoinPool(threads);
+	try{
+	    FileChannel channel = file.getChannel();
+	    fileSize = channel.size();
+	    long count = Math.max(threads * 4L, (fileSize + MAX_CHUNK - 1) / MAX_CHUNK);
+	    //no point in chunks smaller than a few records
+	    count = Math.max(1, Math.min(count, fileSize / 4096));
+	    int c = (int) count;
+	    rawStarts = new long[c + 1];
+	    for(int i = 0; i <= c; i++){
+		rawStarts[i] = fileSize * i / c;
+	    }
+	    newlines = new long[c];
+	    starts = new long[c + 1];
+	    chunks = new Chunk[c];
+	    runPhase(channel, COUNT);
+	    alignChunks(channel);
+	    runPhase(channel, PARSE);
+	    addVertices(graph);
+	    runPhase(channel, OUTGOING);
+	    runPhase(channel, INCOMING);
+	    //owners are set only now so the parallel phases do not all bump the same counter
+	    for(Vertex<String> account : accounts){
+		if(account != null){
+		    account.owner = graph;
+		}
+	    }
+	    graph.modCount++;
+	}
+	finally{
+	    pool.shutdown();
+	    file.close();
+	}
+	ArrayList<MalformedRecordException> problems = new ArrayList<MalformedRecordException>();
+	for(Chunk chunk : chunks){
+	    problems.addAll(chunk.problems);
+	}
+	Collections.sort(problems, new Comparator<MalformedRecordException>(){
+		public int compare(MalformedRecordException a, MalformedRecordException b){
+		    return Long.compare(a.getOffset(), b.getOffset());
+		}
+	    });
+	return problems;
+    }
+
+    //the steps of the load that run once per chunk
+    protected static final int COUNT = 0;
+    protected static final int PARSE = 1;
+    protected static final int OUTGOING = 2;
+    protected static final int INCOMING = 3;
+
+    /**
+     * runPhase runs one step of the load for every chunk in parallel and waits for all of them
+     * @param channel of the file
+     * @param phase step to run
+     * @throws IOException if a chunk could not be read
+     */
+    protected void runPhase(FileChannel channel, int phase) throws IOException{
+	final PhaseTask[] tasks = new PhaseTask[chunks.length];
+	for(int c = 0; c < tasks.length; c++){
+	    tasks[c] = new PhaseTask(channel, phase, c);
+	}
+	pool.invoke(new RecursiveAction(){
+		protected void compute(){
+		    invokeAll(tasks);
+		}
+	    });
+	for(PhaseTask task : tasks){
+	    if(task.failure != null){
+		throw task.failure;
+	    }
+	}
+    }
+
+    /**
+     * The PhaseTask class runs one step of the load for one chunk
+     */
+    protected class PhaseTask extends RecursiveAction{
+
+	protected final FileChannel channel;
+	protected final int phase;
+	protected final int chunk;
+	protected IOException failure;
+
+	protected PhaseTask(FileChannel channel, int phase, int chunk){
+	    this.channel = channel;
+	    this.phase = phase;
+	    this.chunk = chunk;
+	}
+
+	protected void compute(){
+	    try{
+		if(phase == COUNT){
+		    newlines[chunk] = countNewlines(map(channel, rawStarts[chunk], rawStarts[chunk + 1]));
+		}
+		else if(phase == PARSE){
+		    chunks[chunk] = new Chunk(starts[chunk]);
+		    chunks[chunk].parse(map(channel, starts[chunk], starts[chunk + 1]));
+		}
+		else if(phase == OUTGOING){
+		    chunks[chunk].addOutgoing();
+		}
+		else{
+		    addIncoming(chunk);
+		}
+	    }
+	    catch(IOException e){
+		failure = e;
+	    }
+	}
+    }
+
+    /**
+     * map maps part of the file read-only
+     * @param channel of the file
+     * @param start and end offsets of the part
+     * @return mapped part
+     * @throws IOException if the part cannot be mapped
+     */
+    protected static MappedByteBuffer map(FileChannel channel, long start, long end) throws IOException{
+	return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * countNewlines counts the newline bytes in a mapped part of the file
+     * @param buffer mapped part
+     * @return number of newlines
+     */
+    protected static long countNewlines(MappedByteBuffer buffer){
+	int length = buffer.limit();
+	long count = 0;
+	for(int i = 0; i < length; i++){
+	    if(buffer.get(i) == '\n'){
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * skipLine returns the position just past the next newline in a buffer
+     * @param buffer to look in
+     * @param i position to start at
+     * @return position after the newline, or past the end of the buffer if there is none
+     */
+    protected static int skipLine(MappedByteBuffer buffer, int i){
+	while(i < buffer.limit() && buffer.get(i) != '\n'){
+	    i++;
+	}
+	return i + 1;
+    }
+
+    /**
+     * alignChunks moves the start of every chunk forward to the first record that begins in it. The newlines before
+     * a chunk give the number of the first line starting inside it, and records start on every fourth line. A chunk
+     * in which no record starts owns nothing and the chunk before it runs on past it
+     * @param channel of the file
+     * @throws IOException if a chunk cannot be mapped
+     */
+    protected void alignChunks(FileChannel channel) throws IOException{
+	int count = chunks.length;
+	long[] aligned = new long[count];
+	long before = 0;
+	for(int c = 0; c < count; c++){
+	    aligned[c] = 0;
+	    if(c > 0){
+		MappedByteBuffer buffer = map(channel, rawStarts[c] - 1, rawStarts[c + 1]);
+		//line is the number of the line starting at buffer position i
+		int i = 1;
+		long line = before;
+		if(buffer.get(0) != '\n'){
+		    i = skipLine(buffer, i);
+		    line++;
+		}
+		while(i < buffer.limit() && line % 4 != 0){
+		    i = skipLine(buffer, i);
+		    line++;
+		}
+		aligned[c] = i < buffer.limit() ? rawStarts[c] - 1 + i : -1;
+	    }
+	    before += newlines[c];
+	}
+	starts[count] = fileSize;
+	for(int c = count - 1; c >= 0; c--){
+	    starts[c] = aligned[c] >= 0 ? aligned[c] : starts[c + 1];
+	}
+    }
+
+    /**
+     * addVertices puts every parsed account into the graph and gives it a dense index. When an id appears twice the
+     * first record keeps it and the later one is reported and dropped
+     * @param graph to add the vertices to
+     */
+    @SuppressWarnings("unchecked")
+    protected void addVertices(SocialGraph graph){
+	int total = 0;
+	for(Chunk chunk : chunks){
+	    total += chunk.size;
+	}
+	index = new LongIntHashMap(total);
+	accounts = new Vertex[total];
+	int next = 0;
+	for(Chunk chunk : chunks){
+	    for(int r = 0; r < chunk.size; r++){
+		Vertex<String> vertex = chunk.vertices[r];
+		if(vertex == null){
+		    continue;
+		}
+		if(index.putIfAbsent(vertex.getId(), next) != next){
+		    chunk.problems.add(new MalformedRecordException(chunk.recordOffsets[r],
+								     "duplicate id " + vertex.getId()));
+		    chunk.vertices[r] = null;
+		    continue;
+		}
+		accounts[next] = vertex;
+		graph.graph.put(vertex.getId(), vertex);
+		next++;
+	    }
+	}
+    }
+
+    /**
+     * addIncoming adds the incoming edges of the sinks in one partition. The buckets are taken in file order so each
+     * incoming list comes out in the same order as a sequential load would make it
+     * @param partition of the sinks
+     */
+    protected void addIncoming(int partition){
+	for(Chunk chunk : chunks){
+	    for(Edge<String> edge : chunk.buckets[partition]){
+		edge.getSink().addIncoming(edge);
+	    }
+	}
+    }
+
+    /**
+     * The Chunk class parses and holds the records from one record aligned part of the file
+     */
+    protected class Chunk{
+
+	protected final long start;
+	protected int size;
+	protected Vertex<String>[] vertices;
+	//file offsets of the id, follows and likes lines of each record
+	protected long[] recordOffsets;
+	protected long[] followOffsets;
+	protected long[] likeOffsets;
+	//the ids followed by record r are follows[followStart[r]] to follows[followStart[r + 1] - 1], likes likewise
+	protected int[] followStart;
+	protected long[] follows;
+	protected int[] likeStart;
+	protected long[] likes;
+	//the edges into the sinks of each partition
+	protected ArrayList<Edge<String>>[] buckets;
+	protected final ArrayList<MalformedRecordException> problems;
+	//the line being parsed as a range of the mapped chunk, without its line terminator
+	protected int lineStart;
+	protected int lineEnd;
+	protected int position;
+
+	@SuppressWarnings("unchecked")
+	protected Chunk(long start){
+	    this.start = start;
+	    size = 0;
+	    vertices = new Vertex[64];
+	    recordOffsets = new long[64];
+	    followOffsets = new long[64];
+	    likeOffsets = new long[64];
+	    followStart = new int[65];
+	    likeStart = new int[65];
+	    follows = new long[256];
+	    likes = new long[256];
+	    problems = new ArrayList<MalformedRecordException>();
+	}
+
+	/**
+	 * nextLine moves to the next line of the chunk
+	 * @param buffer mapped chunk
+	 * @return false at the end of the chunk
+	 */
+	protected boolean nextLine(MappedByteBuffer buffer){
+	    int limit = buffer.limit();
+	    if(position >= limit){
+		lineStart = limit;
+		lineEnd = limit;
+		return false;
+	    }
+	    lineStart = position;
+	    int end = skipLine(buffer, position) - 1;
+	    position = end + 1;
+	    while(end > lineStart && (buffer.get(end - 1) == '\r' || buffer.get(end - 1) == ' ')){
+		end--;
+	    }
+	    lineEnd = end;
+	    return true;
+	}
+
+	/**
+	 * parse reads every record of the chunk. A record with a bad line is reported, the rest of its four lines are
+	 * skipped and parsing goes on with the next record
+	 * @param buffer mapped chunk
+	 */
+	protected void parse(MappedByteBuffer buffer){
+	    position = 0;
+	    while(nextLine(buffer)){
+		if(size == vertices.length){
+		    grow();
+		}
+		recordOffsets[size] = start + lineStart;
+		followStart[size + 1] = followStart[size];
+		likeStart[size + 1] = likeStart[size];
+		try{
+		    long id = RecordsReader.parseId(buffer, lineStart, lineEnd, start + lineStart);
+		    if(!nextLine(buffer)){
+			throw new MalformedRecordException(recordOffsets[size], "record " + id + " has no name");
+		    }
+		    byte[] name = new byte[lineEnd - lineStart];
+		    for(int i = 0; i < name.length; i++){
+			name[i] = buffer.get(lineStart + i);
+		    }
+		    vertices[size] = new Vertex<String>(new String(name, StandardCharsets.UTF_8), id);
+		}
+		catch(MalformedRecordException e){
+		    problems.add(e);
+		    vertices[size] = null;
+		    nextLine(buffer);
+		}
+		nextLine(buffer);
+		followOffsets[size] = start + lineStart;
+		readIds(buffer, true);
+		nextLine(buffer);
+		likeOffsets[size] = start + lineStart;
+		readIds(buffer, false);
+		size++;
+	    }
+	}
+
+	/**
+	 * readIds reads the comma separated ids on the current line into the follows or likes of the current record.
+	 * If one of them is not a number the record is reported and dropped
+	 * @param buffer mapped chunk
+	 * @param follow true for the follows line and false for the likes line
+	 */
+	protected void readIds(MappedByteBuffer buffer, boolean follow){
+	    if(vertices[size] == null){
+		return;
+	    }
+	    int from = lineStart;
+	    while(from < lineEnd){
+		int end = from;
+		while(end < lineEnd && buffer.get(end) != ','){
+		    end++;
+		}
+		if(end > from){
+		    long id;
+		    try{
+			id = RecordsReader.parseId(buffer, from, end, start + lineStart);
+		    }
+		    catch(MalformedRecordException e){
+			problems.add(e);
+			vertices[size] = null;
+			return;
+		    }
+		    if(follow){
+			if(followStart[size + 1] == follows.length){
+			    follows = Arrays.copyOf(follows, follows.length * 2);
+			}
+			follows[followStart[size + 1]++] = id;
+		    }
+		    else{
+			if(likeStart[size + 1] == likes.length){
+			    likes = Arrays.copyOf(likes, likes.length * 2);
+			}
+			likes[likeStart[size + 1]++] = id;
+		    }
+		}
+		from = end + 1;
+	    }
+	}
+
+	/**
+	 * grow doubles the per record arrays
+	 */
+	protected void grow(){
+	    int capacity = vertices.length * 2;
+	    vertices = Arrays.copyOf(vertices, capacity);
+	    recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+	    followOffsets = Arrays.copyOf(followOffsets, capacity);
+	    likeOffsets = Arrays.copyOf(likeOffsets, capacity);
+	    followStart = Arrays.copyOf(followStart, capacity + 1);
+	    likeStart = Arrays.copyOf(likeStart, capacity + 1);
+	}
+
+	/**
+	 * addOutgoing makes the follow edges of the chunk's accounts and adds their like weights. Only the chunk's own
+	 * vertices are changed; every edge is also put in the bucket of its sink's partition for addIncoming
+	 */
+	@SuppressWarnings("unchecked")
+	protected void addOutgoing(){
+	    int partitions = chunks.length;
+	    buckets = new ArrayList[partitions];
+	    for(int p = 0; p < partitions; p++){
+		buckets[p] = new ArrayList<Edge<String>>();
+	    }
+	    for(int r = 0; r < size; r++){
+		Vertex<String> vertex = vertices[r];
+		if(vertex == null){
+		    continue;
+		}
+		for(int i = followStart[r]; i < followStart[r + 1]; i++){
+		    int sink = index.get(follows[i], -1);
+		    if(sink < 0){
+			problems.add(new MalformedRecordException(followOffsets[r], "no record for id " + follows[i]));
+			continue;
+		    }
+		    Edge<String> edge = new Edge<String>(vertex, accounts[sink]);
+		    vertex.addOutgoing(edge);
+		    buckets[sink % partitions].add(edge);
+		}
+		for(int i = likeStart[r]; i < likeStart[r + 1]; i++){
+		    if(!index.containsKey(likes[i])){
+			problems.add(new MalformedRecordException(likeOffsets[r], "no record for id " + likes[i]));
+			continue;
+		    }
+		    vertex.incrementWeightTo(likes[i]);
+		}
+	    }
+	}
+    }
+
+}
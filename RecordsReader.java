@@ -0,0 +1,301 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * The RecordsReader class streams a records file, four lines per account: the id, the name, a comma separated list
+ * of the ids the account follows and a comma separated list of the ids it liked. Lines are read into one reusable
+ * byte buffer and ids are parsed straight from the bytes, so no Scanner, substrings or split arrays are created.
+ *
+ * load reads the file twice rather than staging it: the first pass makes every vertex and the second adds the
+ * follow edges and like weights, so peak memory is the graph being built plus the read buffers.
+ *
+ * Records that are well formed but do not fit the graph are handled as RecordsIngest handles them: a repeated id
+ * keeps the first record and skips the rest of the later one, and a follow or like of an id with no record is left
+ * out. Each is reported as a problem and the load goes on. A line that cannot be read at all, an id that is not a
+ * number or a record with no name, still stops the load, where RecordsIngest skips the record
+ */
+
+public class RecordsReader{
+
+    protected static final int BUFFER_SIZE = 1 << 16;
+
+    protected final InputStream in;
+    protected final byte[] buffer;
+    protected int position;
+    protected int limit;
+    //file offset of buffer[0]
+    protected long bufferOffset;
+    //the current line without its line terminator
+    protected byte[] line;
+    //line wrapped for parseId, rewrapped whenever line grows
+    protected ByteBuffer lineBytes;
+    protected int lineLength;
+    protected long lineOffset;
+    //records that were well formed but left out of the graph, or parts of them
+    protected final ArrayList<MalformedRecordException> problems;
+
+    /**
+     * the RecordsReader constructor takes the stream to read lines from
+     * @param in stream positioned at the start of the file
+     */
+    public RecordsReader(InputStream in){
+	this.in = in;
+	buffer = new byte[BUFFER_SIZE];
+	position = 0;
+	limit = 0;
+	bufferOffset = 0;
+	line = new byte[256];
+	lineBytes = ByteBuffer.wrap(line);
+	lineLength = 0;
+	lineOffset = 0;
+	problems = new ArrayList<MalformedRecordException>();
+    }
+
+    /**
+     * load reads a records file into a graph, first the vertices and then the edges
+     * @param graph to add the accounts to
+     * @param fileName of the records file
+     * @return the duplicate records and unknown ids that were left out, in file order
+     * @throws MalformedRecordException with the offset of the first line that cannot be read
+     * @throws IOException if the file cannot be read
+     */
+    public static ArrayList<MalformedRecordException> load(SocialGraph graph, String fileName) throws IOException{
+	ArrayList<MalformedRecordException> problems = new ArrayList<MalformedRecordException>();
+	BitSet duplicates;
+	FileInputStream vertices = new FileInputStream(fileName);
+	try{
+	    RecordsReader reader = new RecordsReader(vertices);
+	    duplicates = reader.readVertices(graph);
+	    problems.addAll(reader.getProblems());
+	}
+	finally{
+	    vertices.close();
+	}
+	FileInputStream edges = new FileInputStream(fileName);
+	try{
+	    RecordsReader reader = new RecordsReader(edges);
+	    reader.readEdges(graph, duplicates);
+	    problems.addAll(reader.getProblems());
+	}
+	finally{
+	    edges.close();
+	}
+	Collections.sort(problems, new Comparator<MalformedRecordException>(){
+		public int compare(MalformedRecordException a, MalformedRecordException b){
+		    return Long.compare(a.getOffset(), b.getOffset());
+		}
+	    });
+	return problems;
+    }
+
+    /**
+     * getProblems returns the records or ids this reader left out of the graph
+     * @return list of problems, empty if there were none
+     */
+    public ArrayList<MalformedRecordException> getProblems(){
+	return problems;
+    }
+
+    /**
+     * readVertices makes a vertex for every record, skipping the follows and likes lines. A record whose id is
+     * already in the graph is reported and left out
+     * @param graph to add the vertices to
+     * @return the numbers of the records left out for repeating an id, counting from 0
+     * @throws IOException if a record is malformed or the file cannot be read
+     */
+    public BitSet readVertices(SocialGraph graph) throws IOException{
+	BitSet duplicates = new BitSet();
+	for(int record = 0; nextLine(); record++){
+	    long recordOffset = lineOffset;
+	    long id = parseId(0, lineLength);
+	    if(!nextLine()){
+		throw new MalformedRecordException(lineOffset, "record " + id + " has no name");
+	    }
+	    if(graph.getVertex(id) != null){
+		problems.add(new MalformedRecordException(recordOffset, "duplicate id " + id));
+		duplicates.set(record);
+	    }
+	    else{
+		String name = new String(line, 0, trimmedLength(), StandardCharsets.UTF_8);
+		graph.addVertex(id, new Vertex<String>(name, id));
+	    }
+	    nextLine();
+	    nextLine();
+	}
+	return duplicates;
+    }
+
+    /**
+     * readEdges adds a follow edge for every id on a follows line and raises the weight of the edge for every id on
+     * a likes line. Ids with no record are reported and left out
+     * @param graph whose vertices were made by readVertices
+     * @param duplicates numbers of the records readVertices left out, whose follows and likes are skipped
+     * @throws IOException if a record is malformed or the file cannot be read
+     */
+    public void readEdges(SocialGraph graph, BitSet duplicates) throws IOException{
+	for(int record = 0; nextLine(); record++){
+	    long id = parseId(0, lineLength);
+	    Vertex<String> vertex = graph.getVertex(id);
+	    boolean skip = duplicates.get(record);
+	    nextLine();
+	    if(nextLine() && !skip){
+		int start = 0;
+		while(start < lineLength){
+		    int end = nextComma(start);
+		    if(end > start){
+			long followed = parseId(start, end);
+			Vertex<String> sink = graph.getVertex(followed);
+			if(sink == null){
+			    problems.add(new MalformedRecordException(lineOffset, "no record for id " + followed));
+			}
+			else{
+			    graph.addEdge(new Edge<String>(vertex, sink));
+			}
+		    }
+		    start = end + 1;
+		}
+	    }
+	    if(nextLine() && !skip){
+		int start = 0;
+		while(start < lineLength){
+		    int end = nextComma(start);
+		    if(end > start){
+			long liked = parseId(start, end);
+			if(graph.getVertex(liked) == null){
+			    problems.add(new MalformedRecordException(lineOffset, "no record for id " + liked));
+			}
+			else{
+			    //a like with no follow edge to raise is ignored
+			    vertex.incrementWeightTo(liked);
+			}
+		    }
+		    start = end + 1;
+		}
+	    }
+	}
+    }
+
+    /**
+     * nextLine reads the next line into line, dropping the line terminator
+     * @return false at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    protected boolean nextLine() throws IOException{
+	lineLength = 0;
+	lineOffset = bufferOffset + position;
+	boolean any = false;
+	while(true){
+	    if(position == limit){
+		bufferOffset += limit;
+		position = 0;
+		limit = in.read(buffer, 0, buffer.length);
+		if(limit <= 0){
+		    limit = 0;
+		    lineLength = trimmedLength();
+		    return any;
+		}
+	    }
+	    any = true;
+	    //copy up to the next newline in one go
+	    int end = position;
+	    while(end < limit && buffer[end] != '\n'){
+		end++;
+	    }
+	    int count = end - position;
+	    if(lineLength + count > line.length){
+		byte[] bigger = new byte[Math.max(line.length * 2, lineLength + count)];
+		System.arraycopy(line, 0, bigger, 0, lineLength);
+		line = bigger;
+		lineBytes = ByteBuffer.wrap(line);
+	    }
+	    System.arraycopy(buffer, position, line, lineLength, count);
+	    lineLength += count;
+	    position = end;
+	    if(end < limit){
+		position++;
+		lineLength = trimmedLength();
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * trimmedLength returns the length of the current line without a trailing carriage return or spaces
+     * @return length
+     */
+    protected int trimmedLength(){
+	int length = lineLength;
+	while(length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ')){
+	    length--;
+	}
+	return length;
+    }
+
+    /**
+     * nextComma returns the position of the next comma on the current line
+     * @param from position to start looking at
+     * @return position of the comma or the length of the line if there is none
+     */
+    protected int nextComma(int from){
+	while(from < lineLength && line[from] != ','){
+	    from++;
+	}
+	return from;
+    }
+
+    /**
+     * parseId reads a decimal id from part of the current line, ignoring spaces around it
+     * @param start and end of the part of the line
+     * @return id
+     * @throws MalformedRecordException if the part is not a number or does not fit in a long
+     */
+    protected long parseId(int start, int end) throws MalformedRecordException{
+	return parseId(lineBytes, start, end, lineOffset);
+    }
+
+    /**
+     * parseId reads a decimal id from part of a buffer, ignoring spaces around it. Both loaders parse ids with it
+     * @param bytes holding the line
+     * @param start and end of the part
+     * @param offset file offset of the line, for the error
+     * @return id
+     * @throws MalformedRecordException if the part is not a number or does not fit in a long
+     */
+    protected static long parseId(ByteBuffer bytes, int start, int end, long offset) throws MalformedRecordException{
+	while(start < end && bytes.get(start) == ' '){
+	    start++;
+	}
+	while(end > start && (bytes.get(end - 1) == ' ' || bytes.get(end - 1) == '\r')){
+	    end--;
+	}
+	boolean negative = start < end && bytes.get(start) == '-';
+	if(negative){
+	    start++;
+	}
+	if(start == end || end - start > 19){
+	    throw new MalformedRecordException(offset, "expected an id");
+	}
+	//summed as a negative number, like Long.parseLong, so Long.MIN_VALUE fits and overflow can be caught
+	long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+	long value = 0;
+	for(int i = start; i < end; i++){
+	    int digit = bytes.get(i) - '0';
+	    if(digit < 0 || digit > 9){
+		throw new MalformedRecordException(offset, "expected an id");
+	    }
+	    if(value < limit / 10 || value * 10 < limit + digit){
+		throw new MalformedRecordException(offset, "id out of range");
+	    }
+	    value = value * 10 - digit;
+	}
+	return negative ? value : -value;
+    }
+
+}
@@ -0,0 +1,465 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The ShortestPath class answers point to point shortest path queries against a graph snapshot with Dijkstra's
+ * algorithm. Distances and predecessors live in primitive arrays owned by the query rather than in the shared
+ * Vertex.cost and Vertex.predecessor fields, the frontier is an IndexedMinHeap with a real decrease-key, and the
+ * search stops as soon as the target is settled. Because the snapshot is immutable and every thread gets its own
+ * query state, any number of threads can run queries on one ShortestPath at the same time.
+ *
+ * Two faster modes are there for single pair queries. getShortestPathBidirectional grows one search forward from
+ * the start and one backward from the end along incoming edges and stops when they meet. After prepareLandmarks has
+ * stored the distances to and from k landmark vertices, getShortestPath becomes an A* search (ALT) that uses the
+ * triangle inequality on those distances as a lower bound on the remaining cost, so it heads towards the target
+ * instead of growing in every direction
+ */
+
+public class ShortestPath<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+    //per-thread query state, reused between queries so a query only pays for the vertices it touches
+    protected final ThreadLocal<Query> queries;
+    //distances from every landmark to every vertex and from every vertex to every landmark, null until prepared
+    protected double[][] fromLandmark;
+    protected double[][] toLandmark;
+
+    /**
+     * the ShortestPath constructor takes the snapshot to answer queries against
+     * @param snapshot of the graph
+     */
+    public ShortestPath(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+	queries = new ThreadLocal<Query>(){
+	    protected Query initialValue(){
+		return new Query();
+	    }
+	};
+    }
+
+    /**
+     * getShortestPath finds the cheapest path between two given vertices
+     * @param start and end vertices
+     * @return list of edges on the shortest path from the edge into end back to the edge out of start, an empty
+     * list if start and end are the same vertex, or null if end cannot be reached from start
+     */
+    public ArrayList<Edge<T>> getShortestPath(Vertex<T> start, Vertex<T> end){
+	int source = snapshot.indexOf(start.getId());
+	int target = snapshot.indexOf(end.getId());
+	if(source < 0 || target < 0){
+	    return null;
+	}
+	Query query = queries.get();
+	if(!query.run(source, target)){
+	    return null;
+	}
+	return snapshot.toPath(query.predecessor, source, target);
+    }
+
+    /**
+     * getShortestPathIds finds the cheapest path between two vertices by id. It needs no edge objects, so it also
+     * works on snapshots that were not frozen from a Graph
+     * @param startId id of the first vertex
+     * @param endId id of the last vertex
+     * @return ids along the path from start to end, or null if either id is not in the snapshot or there is no path
+     */
+    public long[] getShortestPathIds(long startId, long endId){
+	int source = snapshot.indexOf(startId);
+	int target = snapshot.indexOf(endId);
+	if(source < 0 || target < 0){
+	    return null;
+	}
+	Query query = queries.get();
+	if(!query.run(source, target)){
+	    return null;
+	}
+	int length = 1;
+	for(int v = target; v != source; v = snapshot.sourceOf(query.predecessor[v])){
+	    length++;
+	}
+	long[] ids = new long[length];
+	for(int v = target; v != source; v = snapshot.sourceOf(query.predecessor[v])){
+	    ids[--length] = snapshot.idOf(v);
+	}
+	ids[0] = startId;
+	return ids;
+    }
+
+    /**
+     * getShortestPathBidirectional finds the cheapest path between two given vertices by searching forward from
+     * start and backward from end at the same time
+     * @param start and end vertices
+     * @return list of edges on the shortest path in the same order and with the same meaning as getShortestPath
+     */
+    public ArrayList<Edge<T>> getShortestPathBidirectional(Vertex<T> start, Vertex<T> end){
+	int source = snapshot.indexOf(start.getId());
+	int target = snapshot.indexOf(end.getId());
+	if(source < 0 || target < 0){
+	    return null;
+	}
+	Query query = queries.get();
+	int meet = query.runBidirectional(source, target);
+	if(meet < 0){
+	    return null;
+	}
+	//the backward half is a chain of edges from meet to target, walk it first so the edge into end comes first
+	int[] chain = new int[16];
+	int length = 0;
+	int current = meet;
+	while(current != target){
+	    if(length == chain.length){
+		chain = Arrays.copyOf(chain, length * 2);
+	    }
+	    chain[length] = query.successor[current];
+	    current = snapshot.outTargets[chain[length]];
+	    length++;
+	}
+	ArrayList<Edge<T>> path = new ArrayList<Edge<T>>();
+	for(int i = length - 1; i >= 0; i--){
+	    path.add(snapshot.getEdge(chain[i]));
+	}
+	path.addAll(snapshot.toPath(query.predecessor, source, meet));
+	return path;
+    }
+
+    /**
+     * prepareLandmarks picks k landmark vertices and stores the shortest distances from and to each of them for the
+     * ALT lower bounds. The first landmark is the vertex with the most edges and every following one is the vertex
+     * farthest from the landmarks picked so far. This runs 2k full searches
+     * @param k number of landmarks
+     */
+    public void prepareLandmarks(int k){
+	int n = snapshot.size();
+	k = Math.min(k, n);
+	double[][] from = new double[k][];
+	double[][] to = new double[k][];
+	//closest[v] is the distance from v to the nearest landmark so far in either direction
+	double[] closest = new double[n];
+	Arrays.fill(closest, Double.POSITIVE_INFINITY);
+	int landmark = 0;
+	for(int v = 1; v < n; v++){
+	    if(snapshot.outDegree(v) + snapshot.inDegree(v) >
+	       snapshot.outDegree(landmark) + snapshot.inDegree(landmark)){
+		landmark = v;
+	    }
+	}
+	for(int i = 0; i < k; i++){
+	    from[i] = fullSearch(landmark, true);
+	    to[i] = fullSearch(landmark, false);
+	    int farthest = -1;
+	    for(int v = 0; v < n; v++){
+		double nearest = Math.min(from[i][v], to[i][v]);
+		if(nearest < closest[v]){
+		    closest[v] = nearest;
+		}
+		//vertices no landmark reaches yet count as farthest of all
+		if(closest[v] > 0 && (farthest < 0 || closest[v] > closest[farthest])){
+		    farthest = v;
+		}
+	    }
+	    if(farthest < 0){
+		from = Arrays.copyOf(from, i + 1);
+		to = Arrays.copyOf(to, i + 1);
+		break;
+	    }
+	    landmark = farthest;
+	}
+	fromLandmark = from;
+	toLandmark = to;
+    }
+
+    /**
+     * hasLandmarks returns whether prepareLandmarks has been run
+     * @return true if queries use ALT
+     */
+    public boolean hasLandmarks(){
+	return fromLandmark != null;
+    }
+
+    /**
+     * fullSearch returns the distance from a vertex to every vertex along outgoing edges, or from every vertex to
+     * it along incoming edges
+     * @param source dense index
+     * @param forward true for distances from source, false for distances to source
+     * @return distances indexed by dense index, positive infinity when there is no path
+     */
+    protected double[] fullSearch(int source, boolean forward){
+	int n = snapshot.size();
+	int[] offsets = forward ? snapshot.outOffsets : snapshot.inOffsets;
+	int[] neighbors = forward ? snapshot.outTargets : snapshot.inSources;
+	float[] weights = forward ? snapshot.outWeights : snapshot.inWeights;
+	double[] dist = new double[n];
+	Arrays.fill(dist, Double.POSITIVE_INFINITY);
+	IndexedMinHeap heap = new IndexedMinHeap(n);
+	dist[source] = 0;
+	heap.insert(source, 0);
+	while(!heap.isEmpty()){
+	    int v = heap.poll();
+	    int end = offsets[v + 1];
+	    for(int slot = offsets[v]; slot < end; slot++){
+		int w = neighbors[slot];
+		double cost = dist[v] + weights[slot];
+		if(cost < dist[w]){
+		    dist[w] = cost;
+		    heap.offer(w, cost);
+		}
+	    }
+	}
+	return dist;
+    }
+
+    /**
+     * lowerBound returns the ALT lower bound on the cost from one vertex to another. By the triangle inequality
+     * d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L) for every landmark L
+     * @param v and target dense indices
+     * @return lower bound, positive infinity if the landmarks show there is no path
+     */
+    protected double lowerBound(int v, int target){
+	double bound = 0;
+	double infinity = Double.POSITIVE_INFINITY;
+	for(int i = 0; i < fromLandmark.length; i++){
+	    double[] from = fromLandmark[i];
+	    double[] to = toLandmark[i];
+	    if(from[v] != infinity){
+		if(from[target] == infinity){
+		    //the landmark reaches v but not the target, so v cannot reach the target either
+		    return infinity;
+		}
+		bound = Math.max(bound, from[target] - from[v]);
+	    }
+	    if(to[target] != infinity){
+		if(to[v] == infinity){
+		    //the target reaches the landmark but v does not, so v cannot reach the target either
+		    return infinity;
+		}
+		bound = Math.max(bound, to[v] - to[target]);
+	    }
+	}
+	return bound;
+    }
+
+    /**
+     * distance returns the cost of the cheapest path between two vertices
+     * @param source and target dense indices
+     * @return cost of the path or positive infinity if there is none
+     */
+    public double distance(int source, int target){
+	Query query = queries.get();
+	if(!query.run(source, target)){
+	    return Double.POSITIVE_INFINITY;
+	}
+	return query.dist[target];
+    }
+
+    /**
+     * The Query class holds the state of one Dijkstra search. Entries touched by a search are reset at the start of
+     * the next one instead of clearing whole arrays
+     */
+    protected class Query{
+
+	protected final double[] dist;
+	//predecessor[v] is the outgoing slot of the edge used to reach v
+	protected final int[] predecessor;
+	protected final IndexedMinHeap heap;
+	protected final int[] touched;
+	protected int touchedSize;
+	//state of the backward half of a bidirectional search, allocated on first use
+	protected double[] backDist;
+	//successor[v] is the outgoing slot of the edge leaving v towards the target
+	protected int[] successor;
+	protected IndexedMinHeap backHeap;
+
+	protected Query(){
+	    int n = snapshot.size();
+	    dist = new double[n];
+	    predecessor = new int[n];
+	    heap = new IndexedMinHeap(n);
+	    touched = new int[n];
+	    Arrays.fill(dist, Double.POSITIVE_INFINITY);
+	    Arrays.fill(predecessor, -1);
+	    touchedSize = 0;
+	}
+
+	/**
+	 * reset puts back the entries the last search touched
+	 */
+	protected void reset(){
+	    for(int i = 0; i < touchedSize; i++){
+		int v = touched[i];
+		dist[v] = Double.POSITIVE_INFINITY;
+		predecessor[v] = -1;
+		if(backDist != null){
+		    backDist[v] = Double.POSITIVE_INFINITY;
+		    successor[v] = -1;
+		}
+	    }
+	    touchedSize = 0;
+	    heap.clear();
+	    if(backHeap != null){
+		backHeap.clear();
+	    }
+	}
+
+	/**
+	 * touch records that a vertex has state to reset, once per query
+	 * @param v dense index
+	 */
+	protected void touch(int v){
+	    if(dist[v] == Double.POSITIVE_INFINITY && (backDist == null || backDist[v] == Double.POSITIVE_INFINITY)){
+		touched[touchedSize++] = v;
+	    }
+	}
+
+	/**
+	 * run searches from source until target is settled, as A* guided by the landmarks if they are prepared
+	 * @param source and target dense indices
+	 * @return true if target was reached
+	 */
+	protected boolean run(int source, int target){
+	    reset();
+	    boolean guided = fromLandmark != null;
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    float[] weights = snapshot.outWeights;
+	    if(guided && lowerBound(source, target) == Double.POSITIVE_INFINITY){
+		return false;
+	    }
+	    //work done, for GraphMetrics
+	    long settled = 0;
+	    long relaxed = 0;
+	    long heapOps = 1;
+	    touch(source);
+	    dist[source] = 0;
+	    heap.insert(source, 0);
+	    while(!heap.isEmpty()){
+		int v = heap.poll();
+		settled++;
+		heapOps++;
+		if(v == target){
+		    if(GraphMetrics.ENABLED){
+			GraphMetrics.recordSearch(settled, relaxed, heapOps);
+		    }
+		    return true;
+		}
+		double base = dist[v];
+		int end = offsets[v + 1];
+		relaxed += end - offsets[v];
+		for(int slot = offsets[v]; slot < end; slot++){
+		    int w = targets[slot];
+		    double cost = base + weights[slot];
+		    if(cost < dist[w]){
+			double priority = cost;
+			if(guided){
+			    //the landmark bound is consistent so a settled vertex never gets a cheaper route
+			    double bound = lowerBound(w, target);
+			    if(bound == Double.POSITIVE_INFINITY){
+				continue;
+			    }
+			    priority += bound;
+			}
+			if(dist[w] == Double.POSITIVE_INFINITY){
+			    touch(w);
+			    dist[w] = cost;
+			    predecessor[w] = slot;
+			    heap.insert(w, priority);
+			    heapOps++;
+			}
+			else if(heap.contains(w)){
+			    dist[w] = cost;
+			    predecessor[w] = slot;
+			    heap.decreaseKey(w, priority);
+			    heapOps++;
+			}
+		    }
+		}
+	    }
+	    if(GraphMetrics.ENABLED){
+		GraphMetrics.recordSearch(settled, relaxed, heapOps);
+	    }
+	    return false;
+	}
+
+	/**
+	 * runBidirectional alternates a forward search from source and a backward search from target, always growing
+	 * the side with the cheaper frontier, and stops once the two frontiers together cost at least as much as the
+	 * best meeting point found
+	 * @param source and target dense indices
+	 * @return the vertex where the shortest path crosses from the forward to the backward search, or -1 if there
+	 * is no path
+	 */
+	protected int runBidirectional(int source, int target){
+	    int n = snapshot.size();
+	    if(backDist == null){
+		backDist = new double[n];
+		successor = new int[n];
+		backHeap = new IndexedMinHeap(n);
+		Arrays.fill(backDist, Double.POSITIVE_INFINITY);
+		Arrays.fill(successor, -1);
+	    }
+	    reset();
+	    touch(source);
+	    dist[source] = 0;
+	    heap.insert(source, 0);
+	    touch(target);
+	    backDist[target] = 0;
+	    backHeap.insert(target, 0);
+	    double best = source == target ? 0 : Double.POSITIVE_INFINITY;
+	    int meet = source == target ? source : -1;
+	    //work done, for GraphMetrics
+	    long settled = 0;
+	    long relaxed = 0;
+	    long heapOps = 2;
+	    while(!heap.isEmpty() && !backHeap.isEmpty() && heap.peekKey() + backHeap.peekKey() < best){
+		if(heap.peekKey() <= backHeap.peekKey()){
+		    int v = heap.poll();
+		    int end = snapshot.outOffsets[v + 1];
+		    settled++;
+		    relaxed += end - snapshot.outOffsets[v];
+		    heapOps++;
+		    for(int slot = snapshot.outOffsets[v]; slot < end; slot++){
+			int w = snapshot.outTargets[slot];
+			double cost = dist[v] + snapshot.outWeights[slot];
+			if(cost < dist[w]){
+			    touch(w);
+			    dist[w] = cost;
+			    predecessor[w] = slot;
+			    heap.offer(w, cost);
+			    heapOps++;
+			}
+			if(cost + backDist[w] < best){
+			    best = cost + backDist[w];
+			    meet = w;
+			}
+		    }
+		}
+		else{
+		    int v = backHeap.poll();
+		    int end = snapshot.inOffsets[v + 1];
+		    settled++;
+		    relaxed += end - snapshot.inOffsets[v];
+		    heapOps++;
+		    for(int slot = snapshot.inOffsets[v]; slot < end; slot++){
+			int w = snapshot.inSources[slot];
+			double cost = backDist[v] + snapshot.inWeights[slot];
+			if(cost < backDist[w]){
+			    touch(w);
+			    backDist[w] = cost;
+			    successor[w] = snapshot.inEdges[slot];
+			    backHeap.offer(w, cost);
+			    heapOps++;
+			}
+			if(cost + dist[w] < best){
+			    best = cost + dist[w];
+			    meet = w;
+			}
+		    }
+		}
+	    }
+	    if(GraphMetrics.ENABLED){
+		GraphMetrics.recordSearch(settled, relaxed, heapOps);
+	    }
+	    return meet;
+	}
+    }
+
+}
@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The SinglyConnected class checks whether a graph snapshot has at most one simple path between every ordered pair
+ * of vertices. One depth first search per source is enough: there is a second simple path from the source to some
+ * vertex exactly when the search meets a forward edge or a cross edge, an edge to a vertex that has already been
+ * finished in this search. Back edges only close cycles through the source's ancestors and never give a second
+ * simple path. That makes the check O(VE) instead of enumerating every path. Sources are searched in parallel and
+ * every search stops as soon as any of them finds a pair with two paths
+ */
+
+public class SinglyConnected<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+
+    /**
+     * the SinglyConnected constructor takes the snapshot to check
+     * @param snapshot of the graph
+     */
+    public SinglyConnected(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+    }
+
+    /**
+     * The Witness class holds a pair of vertices with two different simple paths between them
+     */
+    public static class Witness<T>{
+
+	protected final long source;
+	protected final long target;
+	protected final ArrayList<Edge<T>> first;
+	protected final ArrayList<Edge<T>> second;
+
+	protected Witness(long source, long target, ArrayList<Edge<T>> first, ArrayList<Edge<T>> second){
+	    this.source = source;
+	    this.target = target;
+	    this.first = first;
+	    this.second = second;
+	}
+
+	/**
+	 * getSource and getTarget return the ids of the ends of the two paths
+	 * @return id
+	 */
+	public long getSource(){
+	    return source;
+	}
+
+	public long getTarget(){
+	    return target;
+	}
+
+	/**
+	 * getFirst and getSecond return the two paths, each as its edges in order from source to target
+	 * @return path
+	 */
+	public ArrayList<Edge<T>> getFirst(){
+	    return first;
+	}
+
+	public ArrayList<Edge<T>> getSecond(){
+	    return second;
+	}
+    }
+
+    /**
+     * find looks for a pair of vertices with two simple paths between them
+     * @return a witness pair and its two paths, or null if the graph is singly connected
+     */
+    public Witness<T> find(){
+	AtomicReference<Witness<T>> found = new AtomicReference<Witness<T>>();
+	int n = snapshot.size();
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+	int leaf = Math.max(1, n / (pool.getParallelism() * 8));
+	pool.invoke(new SourceTask(found, 0, n, leaf));
+	return found.get();
+    }
+
+    /**
+     * The Search class holds the arrays of an iterative depth first search. Marks are stamped with the source so
+     * nothing has to be cleared between sources
+     */
+    protected class Search{
+
+	//visited[v] == stamp when v has been reached from the current source
+	protected final int[] visited;
+	//finished[v] == stamp when v has been left for good by the current source's search
+	protected final int[] finished;
+	//the outgoing slot of the tree edge into each vertex
+	protected final int[] parentSlot;
+	protected final int[] stack;
+	//the next outgoing slot to look at for each vertex on the stack
+	protected final int[] cursor;
+	protected int stamp;
+
+	protected Search(){
+	    int n = snapshot.size();
+	    visited = new int[n];
+	    finished = new int[n];
+	    parentSlot = new int[n];
+	    stack = new int[n];
+	    cursor = new int[n];
+	    stamp = 0;
+	}
+
+	/**
+	 * run searches from a source until it finishes or finds a forward or cross edge
+	 * @param source dense index
+	 * @param found set by another search when it has already found a witness
+	 * @return witness, or null
+	 */
+	protected Witness<T> run(int source, AtomicReference<Witness<T>> found){
+	    stamp++;
+	    int[] offsets = snapshot.outOffsets;
+	    int[] targets = snapshot.outTargets;
+	    int top = 0;
+	    stack[0] = source;
+	    cursor[0] = offsets[source];
+	    visited[source] = stamp;
+	    parentSlot[source] = -1;
+	    long steps = 0;
+	    while(top >= 0){
+		int v = stack[top];
+		if(cursor[top] == offsets[v + 1]){
+		    finished[v] = stamp;
+		    top--;
+		    continue;
+		}
+		int slot = cursor[top];
+		cursor[top]++;
+		int w = targets[slot];
+		if(visited[w] != stamp){
+		    visited[w] = stamp;
+		    parentSlot[w] = slot;
+		    top++;
+		    stack[top] = w;
+		    cursor[top] = offsets[w];
+		}
+		else if(finished[w] == stamp){
+		    //w was reached and finished already, so this edge gives a second simple path to it
+		    return witness(source, w, slot);
+		}
+		//otherwise w is still on the stack and this is a back edge
+		steps++;
+		if((steps & 1023) == 0 && found.get() != null){
+		    return null;
+		}
+	    }
+	    return null;
+	}
+
+	/**
+	 * witness builds the two paths to a vertex reached by both its tree edge and another edge
+	 * @param source dense index
+	 * @param target dense index
+	 * @param slot the outgoing slot of the second edge into target
+	 * @return witness
+	 */
+	protected Witness<T> witness(int source, int target, int slot){
+	    ArrayList<Edge<T>> first = treePath(source, target);
+	    ArrayList<Edge<T>> second = treePath(source, snapshot.sourceOf(slot));
+	    second.add(snapshot.getEdge(slot));
+	    return new Witness<T>(snapshot.idOf(source), snapshot.idOf(target), first, second);
+	}
+
+	/**
+	 * treePath follows tree edges back from a vertex to the source
+	 * @param source and v dense indices
+	 * @return edges from source to v in order
+	 */
+	protected ArrayList<Edge<T>> treePath(int source, int v){
+	    ArrayList<Edge<T>> path = new ArrayList<Edge<T>>();
+	    while(v != source){
+		path.add(snapshot.getEdge(parentSlot[v]));
+		v = snapshot.sourceOf(parentSlot[v]);
+	    }
+	    Collections.reverse(path);
+	    return path;
+	}
+    }
+
+    /**
+     * The SourceTask class searches from a range of sources, splitting the range in half until it is small enough
+     */
+    protected class SourceTask extends RecursiveAction{
+
+	protected final AtomicReference<Witness<T>> found;
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+
+	protected SourceTask(AtomicReference<Witness<T>> found, int start, int end, int leaf){
+	    this.found = found;
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	}
+
+	protected void compute(){
+	    if(found.get() != null){
+		return;
+	    }
+	    if(end - start <= leaf){
+		Search search = new Search();
+		for(int source = start; source < end && found.get() == null; source++){
+		    Witness<T> witness = search.run(source, found);
+		    if(witness != null){
+			found.compareAndSet(null, witness);
+		    }
+		}
+		return;
+	    }
+	    int mid = (start + end) >>> 1;
+	    invokeAll(new SourceTask(found, start, mid, leaf), new SourceTask(found, mid, end, leaf));
+	}
+    }
+
+}
@@ -2,89 +2,118 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Collection;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 import java.lang.Long;
-import java.util.Enumeration;
 
 public class SocialGraph extends Graph<String>{
 
+    //records or ids left out by the last load
+    protected ArrayList<MalformedRecordException> loadProblems;
+    //recommender over the last snapshot, kept so its per-thread arrays are reused between queries
+    private Recommender<String> recommender;
+
+    /**
+     * the no argument constructor for SocialGraph makes an empty graph
+     */
+    public SocialGraph(){
+	loadProblems = new ArrayList<MalformedRecordException>();
+    }
+
     /**
-     * the constructor for SocialGraph takes a file and reads it into a graph
+     * the constructor for SocialGraph takes a file and reads it into a graph. Repeated ids and ids with no record
+     * are left out as load does, and can be looked at afterwards with getLoadProblems
      * @param fileName of file to be graph-ified
      */
     public SocialGraph(String fileName){
+	this();
 	try{
-	    File file = new File(fileName);
-
-	    Scanner fileScanner = new Scanner(file);
-
-	    Hashtable<Long, ArrayList<String[]>> likesAndFollows =
-		new Hashtable<Long, ArrayList<String[]>>();
-
-	    //read through the file and make the vertices and add all the likes and follows to the likesAndFollows hashtable
-	    while(fileScanner.hasNextLine()){
-	        Long id = Long.parseLong(fileScanner.nextLine());
-		String name = fileScanner.nextLine();
-		Vertex<String> toAdd = new Vertex(name, id.longValue());
-		ArrayList<String[]> userActivity = new ArrayList<String[]>();
-		String[] follows = fileScanner.nextLine().split(",");
-		String[] likes = fileScanner.nextLine().split(",");
-		userActivity.add(follows);
-		userActivity.add(likes);
-		likesAndFollows.put(id, userActivity);
-		graph.put(id, toAdd);
+	    long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	    loadProblems = RecordsReader.load(this, fileName);
+	    if(GraphMetrics.ENABLED){
+		recordLoad(fileName, System.nanoTime() - startTime);
 	    }
-
-	    //for every vertex add the edges and change the weights according to likesAndFollows
-	    Enumeration<Long> keys = likesAndFollows.keys();
-	    while(keys.hasMoreElements()){
-		Long id = keys.nextElement();
-		Vertex<String> vertex = graph.get(id);
-		String[] follows = likesAndFollows.get(id).get(0);
-		String[] likes = likesAndFollows.get(id).get(1);
-		for(String following : follows){
-		    if(!following.equals("")){
-			Vertex<String> sink = graph.get(Long.parseLong(following));
-			Edge<String> edge = new Edge(vertex, sink);
-			vertex.addOutgoing(edge);
-			sink.addIncoming(edge);
-		    }
-		}
-		for(String like : likes){
-		    if(!like.equals("")){
-			Vertex<String> liked = graph.get(Long.parseLong(like));
-			for(Edge<String> edge : vertex.getOutgoing()){
-			    if(edge.getSink().equals(liked)){
-				edge.incrementWeight();
-			    }
-			}
-		    }
-		}
-
-	    }
-		
-
 	}
 	catch (Exception e){
 	    e.printStackTrace();
 	}
     }
 
+    /**
+     * load reads a records file into a new graph on several threads. Malformed records are skipped rather than
+     * stopping the load and can be looked at afterwards with getLoadProblems
+     * @param fileName of file to be graph-ified
+     * @param threads to parse the file with
+     * @return the graph
+     * @throws IOException if the file cannot be read
+     */
+    public static SocialGraph load(String fileName, int threads) throws IOException{
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	SocialGraph graph = new SocialGraph();
+	graph.loadProblems = new RecordsIngest(fileName, threads).load(graph);
+	if(GraphMetrics.ENABLED){
+	    graph.recordLoad(fileName, System.nanoTime() - startTime);
+	}
+	return graph;
+    }
+
+    /**
+     * recordLoad reports a finished load to GraphMetrics
+     * @param fileName of the file that was read
+     * @param nanos the load took
+     */
+    protected void recordLoad(String fileName, long nanos){
+	long edges = 0;
+	for(int i = 0; i < graph.size(); i++){
+	    edges += graph.vertexAt(i).getOutgoing().size();
+	}
+	GraphMetrics.recordLoad(nanos, new File(fileName).length(), graph.size(), edges);
+    }
+
+    /**
+     * getLoadProblems returns the records or ids left out by the load that made the graph, each with the file
+     * offset of its bad line
+     * @return list of problems, empty if there were none
+     */
+    public ArrayList<MalformedRecordException> getLoadProblems(){
+	return loadProblems;
+    }
+
+    /**
+     * save writes the graph to a binary snapshot file that open can map back in without parsing
+     * @param path of the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException{
+	MappedSocialGraph.save(freeze(), path);
+    }
+
+    /**
+     * open maps a snapshot file written by save as a read-only graph. Only the header is read here; the rest of
+     * the file is paged in as it is used
+     * @param path of the snapshot file
+     * @return read-only graph over the file
+     * @throws IOException if the file is not a snapshot of the current format version
+     */
+    public static MappedSocialGraph open(Path path) throws IOException{
+	return MappedSocialGraph.open(path);
+    }
+
+    /**
+     * snapshot returns a read-only compressed sparse row view of the social graph
+     * @return snapshot of the graph
+     */
+    public GraphSnapshot<String> snapshot(){
+	return freeze();
+    }
+
     /**
      * getIDs returns an array of all the ids in the graph
      * @return array of all ids in the graph
      */
     public long[] getIDs(){
-	ArrayList<Long> ids = new ArrayList<Long>();
-	Enumeration<Long> keys = graph.keys();
-	while(keys.hasMoreElements()){
-	    ids.add(keys.nextElement());
-	}
-	long[] idArray = new long[ids.size()];
-	for(int i = 0; i < idArray.length; i++){
-	    idArray[i] = ids.get(i);
-	}
-	return idArray;
+	return graph.ids();
     }
 
     /**
@@ -108,18 +137,20 @@ public class SocialGraph extends Graph<String>{
      * @return array of all of the accounts id follows
      */
     public long[] getFollows(long id){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
         Vertex<String> vertex = graph.get(id);
+	long[] followsArray = null;
         if(vertex != null){
 	    ArrayList<Vertex<String>> follows = vertex.getNeighbors();
-	    long[] followsArray = new long[follows.size()];
+	    followsArray = new long[follows.size()];
 	    for(int i = 0; i < followsArray.length; i++){
 		followsArray[i] = follows.get(i).getId();
 	    }
-	    return followsArray;
 	}
-	else{
-	    return null;
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.GET_FOLLOWS.record(System.nanoTime() - startTime);
 	}
+	return followsArray;
     }
 
     /**
@@ -128,18 +159,20 @@ public class SocialGraph extends Graph<String>{
      * @return array of all of the accounts that follow id
      */
     public long[] getFollowers(long id){
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
         Vertex<String> vertex = graph.get(id);
+	long[] followersArray = null;
         if(vertex != null){
 	    ArrayList<Edge<String>> followers = vertex.getIncoming();
-	    long[] followersArray = new long[followers.size()];
+	    followersArray = new long[followers.size()];
 	    for(int i = 0; i < followersArray.length; i++){
 		followersArray[i] = followers.get(i).getSource().getId();
 	    }
-	    return followersArray;
 	}
-	else{
-	    return null;
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.GET_FOLLOWERS.record(System.nanoTime() - startTime);
 	}
+	return followersArray;
     }
 
     /**
@@ -149,18 +182,68 @@ public class SocialGraph extends Graph<String>{
      * @return the number of times id1 liked id2
      */
     public float getLikes(long id1, long id2){
-	Vertex<String> vertexId1 = graph.get(id1);
-	int count = 0;
-	while(count < vertexId1.getOutgoing().size() &&
-	      vertexId1.getOutgoing().get(count).getSink().getId() != id2){
-	    count++;
+	long startTime = GraphMetrics.ENABLED ? System.nanoTime() : 0;
+	Edge<String> edge = graph.get(id1).getOutgoingTo(id2);
+	float likes = edge == null ? 0 : edge.getWeight() - 1;
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.GET_LIKES.record(System.nanoTime() - startTime);
 	}
-	if(count >= vertexId1.getOutgoing().size()){
-	    return 0;
+	return likes;
+    }
+
+    /**
+     * recommend suggests accounts for a given account to follow, scoring every account two follows away by the
+     * number of ways to get there weighted by the likes along the way. Accounts it already follows are left out
+     * @param id of the account
+     * @param k most recommendations to return
+     * @return recommended ids best first with their scores, or null if there is no such account
+     */
+    public Recommender.Result recommend(long id, int k){
+	return recommender().recommend(id, k);
+    }
+
+    /**
+     * recommender returns the recommender for the current snapshot, making a new one when the graph has changed
+     * @return recommender
+     */
+    protected synchronized Recommender<String> recommender(){
+	GraphSnapshot<String> snapshot = freeze();
+	if(recommender == null || recommender.snapshot != snapshot){
+	    recommender = new Recommender<String>(snapshot);
 	}
-	else{
-	    return vertexId1.getOutgoing().get(count).getWeight() - 1;
+	return recommender;
+    }
+
+    /**
+     * recommendAll finds the top k recommendations for every account in parallel, for batch jobs
+     * @param k most recommendations per account
+     * @return hashtable mapping each account id to its recommendations
+     */
+    public Hashtable<Long, Recommender.Result> recommendAll(int k){
+	Recommender<String> engine = recommender();
+	GraphSnapshot<String> snapshot = engine.snapshot;
+	Recommender.Result[] results = engine.recommendAll(k);
+	Hashtable<Long, Recommender.Result> recommendations = new Hashtable<Long, Recommender.Result>();
+	for(int i = 0; i < results.length; i++){
+	    recommendations.put(snapshot.idOf(i), results[i]);
+	}
+	return recommendations;
+    }
+
+    /**
+     * addLike records that one account liked another it follows, adding one to the weight of the follow edge. The
+     * edge tells the graph it has changed, so a like made here or on the vertex or edge is seen by cached snapshots
+     * and query results alike
+     * @param id1 the account doing the liking
+     * @param id2 the account being liked
+     * @return false if id1 does not follow id2
+     */
+    public boolean addLike(long id1, long id2){
+	Vertex<String> vertex = graph.get(id1);
+	if(vertex == null || !vertex.incrementWeightTo(id2)){
+	    return false;
 	}
+	return true;
     }
 
     public static void main(String[] args){
@@ -230,9 +313,10 @@ public class SocialGraph extends Graph<String>{
 	}
 	    
 	    //print the name and betweenness centrality of each vertex
+	    Hashtable<Long, Float> centrality = graph.betweennessCentralityAll();
 	    for(Vertex<String> vertex : graph.getVertices()){
 		System.out.println(vertex.getData() + " has a betweenness centrality of: " +
-				   graph.betweennessCentrality(vertex));
+				   centrality.get(vertex.getId()));
 	    }
 	}
 	else{
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The SpanningForest class finds a minimum or maximum spanning forest of a graph snapshot with filter-Kruskal. Edge
+ * directions are ignored, so every weakly connected component gets its own tree. Each edge becomes one long key,
+ * its weight in the high half (made to sort as a signed int) and its slot in the low half. Kruskal's algorithm works
+ * through the keys in order and keeps every edge that joins two different trees of a union-find over int arrays.
+ *
+ * Instead of sorting every edge up front the keys are split around a sampled pivot. The light half is solved first,
+ * after which most of the heavy half already lies inside a single tree; those edges are dropped in a parallel
+ * filter pass before the heavy half is split again, so only edges that still matter are ever sorted. Small ranges
+ * are sorted with Arrays.parallelSort. The whole run takes O(E log V) or better
+ */
+
+public class SpanningForest<T>{
+
+    //ranges at most this long are sorted instead of split
+    protected static final int BASE = 1 << 14;
+    //filter ranges at most this long run on one thread
+    protected static final int FILTER_LEAF = 1 << 13;
+
+    protected final GraphSnapshot<T> snapshot;
+    protected final ForkJoinPool pool;
+    //union-find forest: parent of each vertex and the size of each root's tree
+    protected int[] parent;
+    protected int[] treeSize;
+    //source of every out slot, looked up once instead of searching the offsets
+    protected int[] sources;
+    //out slots of the forest edges in the order they were taken
+    protected int[] chosen;
+    protected int count;
+    //edges sorted and edges filtered away by the last run, for GraphMetrics
+    protected long sorted;
+    protected long filtered;
+
+    /**
+     * the SpanningForest constructor takes the snapshot to span
+     * @param snapshot of the graph
+     */
+    public SpanningForest(GraphSnapshot<T> snapshot){
+	this(snapshot, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * the SpanningForest constructor takes the snapshot to span and the pool to run the filter passes on
+     * @param snapshot of the graph
+     * @param pool to run on
+     */
+    public SpanningForest(GraphSnapshot<T> snapshot, ForkJoinPool pool){
+	this.snapshot = snapshot;
+	this.pool = pool;
+    }
+
+    /**
+     * compute finds a spanning forest
+     * @param min true for a minimum spanning forest and false for a maximum one
+     * @return the out slots of the forest edges, in the order Kruskal took them
+     */
+    public int[] compute(boolean min){
+	int n = snapshot.size();
+	int m = snapshot.edgeCount();
+	parent = new int[n];
+	treeSize = new int[n];
+	for(int v = 0; v < n; v++){
+	    parent[v] = v;
+	    treeSize[v] = 1;
+	}
+	sources = new int[m];
+	for(int v = 0; v < n; v++){
+	    for(int slot = snapshot.outStart(v); slot < snapshot.outEnd(v); slot++){
+		sources[slot] = v;
+	    }
+	}
+	chosen = new int[Math.max(0, n - 1)];
+	count = 0;
+	sorted = 0;
+	filtered = 0;
+	long[] keys = new long[m];
+	for(int slot = 0; slot < m; slot++){
+	    float weight = snapshot.weight(slot);
+	    keys[slot] = key(min ? weight : -weight, slot);
+	}
+	filterKruskal(keys, 0, m, new Random(m));
+	if(GraphMetrics.ENABLED){
+	    GraphMetrics.recordSpanningForest(sorted, filtered);
+	}
+	return Arrays.copyOf(chosen, count);
+    }
+
+    /**
+     * edges finds a spanning forest and returns its original edges
+     * @param min true for a minimum spanning forest and false for a maximum one
+     * @return the forest edges, in the order Kruskal took them
+     */
+    public ArrayList<Edge<T>> edges(boolean min){
+	int[] slots = compute(min);
+	ArrayList<Edge<T>> result = new ArrayList<Edge<T>>(slots.length);
+	for(int slot : slots){
+	    result.add(snapshot.getEdge(slot));
+	}
+	return result;
+    }
+
+    /**
+     * key packs a weight and a slot into a long that sorts by weight and then by slot
+     * @param weight of the edge
+     * @param slot of the edge
+     * @return key
+     */
+    protected static long key(float weight, int slot){
+	int bits = Float.floatToIntBits(weight == 0 ? 0f : weight);
+	//flip the magnitude bits of negative floats so the bits order like the floats
+	bits ^= (bits >> 31) & 0x7FFFFFFF;
+	return ((long) bits << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    /**
+     * slotOf returns the slot packed into a key
+     * @param key
+     * @return slot
+     */
+    protected static int slotOf(long key){
+	return (int) key;
+    }
+
+    /**
+     * filterKruskal runs Kruskal's algorithm over a range of keys
+     * @param keys of the edges
+     * @param start and end of the range
+     * @param random for choosing pivots
+     */
+    protected void filterKruskal(long[] keys, int start, int end, Random random){
+	if(end - start <= BASE){
+	    Arrays.parallelSort(keys, start, end);
+	    sorted += end - start;
+	    for(int i = start; i < end && count < chosen.length; i++){
+		int slot = slotOf(keys[i]);
+		if(union(sources[slot], snapshot.target(slot))){
+		    chosen[count] = slot;
+		    count++;
+		}
+	    }
+	    return;
+	}
+	long pivot = pivot(keys, start, end, random);
+	//move the keys lighter than the pivot to the front of the range
+	int split = start;
+	for(int i = start; i < end; i++){
+	    if(keys[i] < pivot){
+		long swap = keys[i];
+		keys[i] = keys[split];
+		keys[split] = swap;
+		split++;
+	    }
+	}
+	filterKruskal(keys, start, split, random);
+	if(count == chosen.length){
+	    filtered += end - split;
+	    return;
+	}
+	//drop the heavy edges the light ones have already made useless
+	int kept = pool.invoke(new FilterTask(keys, split, end));
+	filtered += end - split - kept;
+	filterKruskal(keys, split, split + kept, random);
+    }
+
+    /**
+     * pivot picks the median of a small sample of a range, which splits the range roughly in half
+     * @param keys of the edges
+     * @param start and end of the range
+     * @param random for sampling
+     * @return pivot key
+     */
+    protected static long pivot(long[] keys, int start, int end, Random random){
+	long[] sample = new long[31];
+	for(int i = 0; i < sample.length; i++){
+	    sample[i] = keys[start + random.nextInt(end - start)];
+	}
+	Arrays.sort(sample);
+	long pivot = sample[sample.length / 2];
+	//the smallest key would leave the light half empty
+	return pivot == sample[0] ? sample[0] + 1 : pivot;
+    }
+
+    /**
+     * find returns the root of a vertex's tree, halving the path on the way up
+     * @param v dense index
+     * @return root
+     */
+    protected int find(int v){
+	while(parent[v] != v){
+	    parent[v] = parent[parent[v]];
+	    v = parent[v];
+	}
+	return v;
+    }
+
+    /**
+     * root returns the root of a vertex's tree without changing the forest, so filter tasks can call it at once
+     * @param v dense index
+     * @return root
+     */
+    protected int root(int v){
+	while(parent[v] != v){
+	    v = parent[v];
+	}
+	return v;
+    }
+
+    /**
+     * union joins the trees of two vertices, hanging the smaller under the larger
+     * @param v and w dense indices
+     * @return false if they were already in the same tree
+     */
+    protected boolean union(int v, int w){
+	int a = find(v);
+	int b = find(w);
+	if(a == b){
+	    return false;
+	}
+	if(treeSize[a] < treeSize[b]){
+	    int swap = a;
+	    a = b;
+	    b = swap;
+	}
+	parent[b] = a;
+	treeSize[a] += treeSize[b];
+	return true;
+    }
+
+    /**
+     * The FilterTask class drops the keys of a range whose ends are already in the same tree. Halves of the range
+     * are filtered in parallel and the survivors of the right half are moved down after those of the left
+     */
+    protected class FilterTask extends RecursiveTask<Integer>{
+
+	protected final long[] keys;
+	protected final int start;
+	protected final int end;
+
+	protected FilterTask(long[] keys, int start, int end){
+	    this.keys = keys;
+	    this.start = start;
+	    this.end = end;
+	}
+
+	protected Integer compute(){
+	    if(end - start <= FILTER_LEAF){
+		int kept = start;
+		for(int i = start; i < end; i++){
+		    int slot = slotOf(keys[i]);
+		    if(root(sources[slot]) != root(snapshot.target(slot))){
+			keys[kept] = keys[i];
+			kept++;
+		    }
+		}
+		return kept - start;
+	    }
+	    int mid = (start + end) >>> 1;
+	    FilterTask left = new FilterTask(keys, start, mid);
+	    FilterTask right = new FilterTask(keys, mid, end);
+	    left.fork();
+	    int rightKept = right.compute();
+	    int leftKept = left.join();
+	    System.arraycopy(keys, mid, keys, start + leftKept, rightKept);
+	    return leftKept + rightKept;
+	}
+    }
+
+}
@@ -0,0 +1,352 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Triangles class counts the triangles of a graph snapshot read as undirected, the way makeUndirected reads it:
+ * edge directions are ignored, reciprocal and parallel edges make one neighbor pair and self loops are left out.
+ * From the counts it gives every vertex its local clustering coefficient, the share of pairs of its neighbors that
+ * are neighbors themselves, and the graph its global one.
+ *
+ * The neighbors come from an UndirectedView, so the undirected graph is never built. Each neighbor pair is kept once,
+ * pointing from the vertex of lower degree to the one of higher degree, which leaves every vertex with at most
+ * about the square root of twice the number of edges to look at. A triangle u, v, w is then found exactly once, as a
+ * common entry of the forward lists of u and v. The lists are sorted int arrays, intersected by a merge when they
+ * are about the same length and by galloping through the longer one when they are not. Every phase runs over vertex
+ * ranges in parallel
+ */
+
+public class Triangles<T>{
+
+    //galloping pays once one list is this many times longer than the other
+    protected static final int GALLOP_RATIO = 32;
+
+    //phases of a CountTask
+    protected static final int DEGREES = 0;
+    protected static final int FORWARD_DEGREES = 1;
+    protected static final int FORWARD_LISTS = 2;
+    protected static final int TRIANGLES = 3;
+
+    protected final GraphSnapshot<T> snapshot;
+    protected final UndirectedView<T> view;
+    //undirected degree of every vertex, without self loops
+    protected int[] degree;
+    //neighbors of higher degree of every vertex, by dense index, in the slice forwardOffsets[v] to forwardOffsets[v + 1]
+    protected int[] forwardOffsets;
+    protected int[] forward;
+    //triangles through every vertex
+    protected AtomicLongArray triangles;
+
+    /**
+     * the Triangles constructor takes the snapshot to count in
+     * @param snapshot of the graph
+     */
+    public Triangles(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+	this.view = new UndirectedView<T>(snapshot);
+    }
+
+    /**
+     * The Counts class holds the triangles through every vertex and the clustering coefficients that follow
+     */
+    public static class Counts{
+
+	protected final GraphSnapshot<?> snapshot;
+	protected final long[] triangles;
+	protected final int[] degree;
+	protected final long total;
+
+	protected Counts(GraphSnapshot<?> snapshot, long[] triangles, int[] degree, long total){
+	    this.snapshot = snapshot;
+	    this.triangles = triangles;
+	    this.degree = degree;
+	    this.total = total;
+	}
+
+	/**
+	 * getTotal returns the number of triangles in the graph
+	 * @return triangles
+	 */
+	public long getTotal(){
+	    return total;
+	}
+
+	/**
+	 * getTriangles returns the triangles through every vertex by dense index, as GraphSnapshot.indexOf gives it
+	 * @return triangles
+	 */
+	public long[] getTriangles(){
+	    return triangles;
+	}
+
+	/**
+	 * getTriangles returns the triangles through a vertex
+	 * @param id of the vertex
+	 * @return triangles, or -1 if there is no such vertex
+	 */
+	public long getTriangles(long id){
+	    int index = snapshot.indexOf(id);
+	    return index < 0 ? -1 : triangles[index];
+	}
+
+	/**
+	 * getLocalClustering returns the local clustering coefficient of a vertex, its triangles over the pairs of
+	 * its neighbors
+	 * @param id of the vertex
+	 * @return coefficient from 0 to 1, 0 for fewer than two neighbors, or -1 if there is no such vertex
+	 */
+	public double getLocalClustering(long id){
+	    int index = snapshot.indexOf(id);
+	    return index < 0 ? -1 : localClustering(index);
+	}
+
+	/**
+	 * getLocalClustering returns the local clustering coefficient of every vertex
+	 * @return coefficients by dense index
+	 */
+	public double[] getLocalClustering(){
+	    double[] clustering = new double[triangles.length];
+	    for(int v = 0; v < clustering.length; v++){
+		clustering[v] = localClustering(v);
+	    }
+	    return clustering;
+	}
+
+	protected double localClustering(int v){
+	    long pairs = (long) degree[v] * (degree[v] - 1) / 2;
+	    return pairs == 0 ? 0 : (double) triangles[v] / pairs;
+	}
+
+	/**
+	 * getAverageClustering returns the mean of the local clustering coefficients over every vertex
+	 * @return average, 0 for an empty graph
+	 */
+	public double getAverageClustering(){
+	    double sum = 0;
+	    for(int v = 0; v < triangles.length; v++){
+		sum += localClustering(v);
+	    }
+	    return triangles.length == 0 ? 0 : sum / triangles.length;
+	}
+
+	/**
+	 * getGlobalClustering returns the global clustering coefficient (transitivity), three times the triangles over
+	 * the paths of two edges
+	 * @return coefficient from 0 to 1, 0 if there are no such paths
+	 */
+	public double getGlobalClustering(){
+	    long pairs = 0;
+	    for(int d : degree){
+		pairs += (long) d * (d - 1) / 2;
+	    }
+	    return pairs == 0 ? 0 : 3.0 * total / pairs;
+	}
+    }
+
+    /**
+     * count counts the triangles through every vertex
+     * @return counts
+     */
+    public Counts count(){
+	return count(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * count counts the triangles through every vertex on a given pool
+     * @param pool to run on
+     * @return counts
+     */
+    public synchronized Counts count(ForkJoinPool pool){
+	int n = snapshot.size();
+	int leaf = Math.max(1024, n / (pool.getParallelism() * 8));
+	degree = new int[n];
+	forwardOffsets = new int[n + 1];
+	pool.invoke(new CountTask(DEGREES, 0, n, leaf));
+	pool.invoke(new CountTask(FORWARD_DEGREES, 0, n, leaf));
+	//forwardOffsets holds each vertex's forward degree one slot up, so summing in place leaves the slice starts
+	for(int v = 0; v < n; v++){
+	    forwardOffsets[v + 1] += forwardOffsets[v];
+	}
+	forward = new int[forwardOffsets[n]];
+	pool.invoke(new CountTask(FORWARD_LISTS, 0, n, leaf));
+	triangles = new AtomicLongArray(n);
+	long total = pool.invoke(new CountTask(TRIANGLES, 0, n, leaf));
+	long[] counts = new long[n];
+	for(int v = 0; v < n; v++){
+	    counts[v] = triangles.get(v);
+	}
+	Counts result = new Counts(snapshot, counts, degree, total);
+	degree = null;
+	forwardOffsets = null;
+	forward = null;
+	triangles = null;
+	return result;
+    }
+
+    /**
+     * before returns whether one vertex comes before another in the orientation: lower degree first, ties to the
+     * lower dense index
+     * @param u and v dense indices
+     * @return true if the pair is kept as u -> v
+     */
+    protected boolean before(int u, int v){
+	return degree[u] < degree[v] || (degree[u] == degree[v] && u < v);
+    }
+
+    /**
+     * intersect finds the common entries of two forward lists and adds a triangle to every vertex involved
+     * @param u and v ends of the edge the lists belong to
+     * @return number of common entries
+     */
+    protected long intersect(int u, int v){
+	int a = forwardOffsets[u];
+	int aEnd = forwardOffsets[u + 1];
+	int b = forwardOffsets[v];
+	int bEnd = forwardOffsets[v + 1];
+	if(aEnd - a > bEnd - b){
+	    int swap = a;
+	    a = b;
+	    b = swap;
+	    swap = aEnd;
+	    aEnd = bEnd;
+	    bEnd = swap;
+	}
+	long found = 0;
+	if((long) (aEnd - a) * GALLOP_RATIO < bEnd - b){
+	    for(; a < aEnd && b < bEnd; a++){
+		b = gallop(forward[a], b, bEnd);
+		if(b < bEnd && forward[b] == forward[a]){
+		    triangles.incrementAndGet(forward[a]);
+		    found++;
+		    b++;
+		}
+	    }
+	}
+	else{
+	    while(a < aEnd && b < bEnd){
+		int x = forward[a];
+		int y = forward[b];
+		if(x < y){
+		    a++;
+		}
+		else if(x > y){
+		    b++;
+		}
+		else{
+		    triangles.incrementAndGet(x);
+		    found++;
+		    a++;
+		    b++;
+		}
+	    }
+	}
+	if(found > 0){
+	    triangles.addAndGet(u, found);
+	    triangles.addAndGet(v, found);
+	}
+	return found;
+    }
+
+    /**
+     * gallop finds the first position in a sorted slice of forward holding at least a value, stepping out in powers
+     * of two and then searching back by halves
+     * @param value to look for
+     * @param from first position of the slice
+     * @param to end of the slice
+     * @return position, or to if every entry is smaller
+     */
+    protected int gallop(int value, int from, int to){
+	int step = 1;
+	int low = from;
+	int high = from;
+	while(high < to && forward[high] < value){
+	    low = high + 1;
+	    high = from + step;
+	    step <<= 1;
+	}
+	if(high > to){
+	    high = to;
+	}
+	while(low < high){
+	    int mid = (low + high) >>> 1;
+	    if(forward[mid] < value){
+		low = mid + 1;
+	    }
+	    else{
+		high = mid;
+	    }
+	}
+	return low;
+    }
+
+    /**
+     * The CountTask class runs one phase of count over a range of vertices, splitting it in half until it is small
+     * enough for one thread. DEGREES finds every undirected degree, FORWARD_DEGREES counts the neighbors each
+     * vertex comes before, FORWARD_LISTS writes them out, and TRIANGLES intersects the forward lists of both ends of
+     * every forward pair and returns the triangles found
+     */
+    protected class CountTask extends RecursiveTask<Long>{
+
+	protected final int phase;
+	protected final int start;
+	protected final int end;
+	protected final int leaf;
+
+	protected CountTask(int phase, int start, int end, int leaf){
+	    this.phase = phase;
+	    this.start = start;
+	    this.end = end;
+	    this.leaf = leaf;
+	}
+
+	protected Long compute(){
+	    if(end - start > leaf){
+		int mid = (start + end) >>> 1;
+		CountTask left = new CountTask(phase, start, mid, leaf);
+		left.fork();
+		long right = new CountTask(phase, mid, end, leaf).compute();
+		return left.join() + right;
+	    }
+	    long total = 0;
+	    if(phase == TRIANGLES){
+		for(int u = start; u < end; u++){
+		    for(int slot = forwardOffsets[u]; slot < forwardOffsets[u + 1]; slot++){
+			total += intersect(u, forward[slot]);
+		    }
+		}
+		return total;
+	    }
+	    UndirectedView<T>.Cursor cursor = view.cursor();
+	    for(int v = start; v < end; v++){
+		cursor.reset(v);
+		int count = 0;
+		int next = phase == FORWARD_LISTS ? forwardOffsets[v] : 0;
+		while(cursor.next()){
+		    int w = cursor.neighbor();
+		    if(w == v){
+			continue;
+		    }
+		    if(phase == DEGREES){
+			count++;
+		    }
+		    else if(before(v, w)){
+			if(phase == FORWARD_DEGREES){
+			    count++;
+			}
+			else{
+			    forward[next++] = w;
+			}
+		    }
+		}
+		if(phase == DEGREES){
+		    degree[v] = count;
+		}
+		else if(phase == FORWARD_DEGREES){
+		    forwardOffsets[v + 1] = count;
+		}
+	    }
+	    return total;
+	}
+    }
+
+}
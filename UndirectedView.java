@@ -0,0 +1,229 @@
+/**
+ * The UndirectedView class reads a graph snapshot as if it were undirected, without copying it. The neighbors of a
+ * vertex are the union of its outgoing sinks and incoming sources. Both slices of the snapshot are sorted by dense
+ * index, so they are merged on the fly in one pass. A neighbor reached both ways, or through parallel edges, shows up
+ * once, with the weights of all those edges added together, which is what makeUndirected does for reciprocal pairs.
+ * Self loops are taken from the outgoing slice only, so they are not counted twice.
+ *
+ * toSnapshot and toGraph build a materialised copy in time linear in the size of the graph
+ */
+
+public class UndirectedView<T>{
+
+    protected final GraphSnapshot<T> snapshot;
+
+    /**
+     * the UndirectedView constructor takes the snapshot to view
+     * @param snapshot of the graph
+     */
+    public UndirectedView(GraphSnapshot<T> snapshot){
+	this.snapshot = snapshot;
+    }
+
+    /**
+     * size returns the number of vertices
+     * @return number of vertices
+     */
+    public int size(){
+	return snapshot.size();
+    }
+
+    /**
+     * cursor returns a new cursor over the neighbors of vertices of the view. One cursor can be reused for any
+     * number of vertices, so walking the whole view allocates nothing
+     * @return cursor
+     */
+    public Cursor cursor(){
+	return new Cursor();
+    }
+
+    /**
+     * degree returns the number of distinct neighbors of a vertex
+     * @param v dense index
+     * @return degree
+     */
+    public int degree(int v){
+	Cursor cursor = new Cursor();
+	cursor.reset(v);
+	int degree = 0;
+	while(cursor.next()){
+	    degree++;
+	}
+	return degree;
+    }
+
+    /**
+     * neighbors copies the neighbors of a vertex and their merged weights into arrays
+     * @param v dense index
+     * @param neighbors array for the neighbors, at least outDegree + inDegree long
+     * @param weights array for the weights, or null if they are not needed
+     * @return number of neighbors written
+     */
+    public int neighbors(int v, int[] neighbors, float[] weights){
+	Cursor cursor = new Cursor();
+	cursor.reset(v);
+	int count = 0;
+	while(cursor.next()){
+	    neighbors[count] = cursor.neighbor();
+	    if(weights != null){
+		weights[count] = cursor.weight();
+	    }
+	    count++;
+	}
+	return count;
+    }
+
+    /**
+     * The Cursor class walks the merged neighbors of one vertex in ascending dense index order
+     */
+    public class Cursor{
+
+	protected int vertex;
+	protected int out;
+	protected int outEnd;
+	protected int in;
+	protected int inEnd;
+	protected int neighbor;
+	protected float weight;
+
+	/**
+	 * reset moves the cursor to the start of a vertex's neighbors
+	 * @param v dense index
+	 */
+	public void reset(int v){
+	    vertex = v;
+	    out = snapshot.outStart(v);
+	    outEnd = snapshot.outEnd(v);
+	    in = snapshot.inStart(v);
+	    inEnd = snapshot.inEnd(v);
+	}
+
+	/**
+	 * next moves to the next neighbor
+	 * @return false once every neighbor has been seen
+	 */
+	public boolean next(){
+	    //self loops show up in both slices, only the outgoing copy counts
+	    while(in < inEnd && snapshot.source(in) == vertex){
+		in++;
+	    }
+	    boolean hasOut = out < outEnd;
+	    boolean hasIn = in < inEnd;
+	    if(!hasOut && !hasIn){
+		return false;
+	    }
+	    if(!hasIn || (hasOut && snapshot.target(out) <= snapshot.source(in))){
+		neighbor = snapshot.target(out);
+	    }
+	    else{
+		neighbor = snapshot.source(in);
+	    }
+	    weight = 0;
+	    while(out < outEnd && snapshot.target(out) == neighbor){
+		weight += snapshot.weight(out);
+		out++;
+	    }
+	    while(in < inEnd && snapshot.source(in) == neighbor && neighbor != vertex){
+		weight += snapshot.inWeight(in);
+		in++;
+	    }
+	    return true;
+	}
+
+	/**
+	 * neighbor returns the dense index of the current neighbor
+	 * @return dense index
+	 */
+	public int neighbor(){
+	    return neighbor;
+	}
+
+	/**
+	 * weight returns the summed weight of the edges between the vertex and the current neighbor
+	 * @return weight
+	 */
+	public float weight(){
+	    return weight;
+	}
+    }
+
+    /**
+     * toSnapshot materialises the view as a symmetric snapshot with one edge each way per neighboring pair. Each
+     * vertex's neighbors come out of the merge already sorted, so this takes two linear passes and no sorting. The
+     * snapshot has no edge objects
+     * @return undirected snapshot
+     */
+    public GraphSnapshot<T> toSnapshot(){
+	int n = snapshot.size();
+	Cursor cursor = new Cursor();
+	int[] offsets = new int[n + 1];
+	for(int v = 0; v < n; v++){
+	    cursor.reset(v);
+	    int degree = 0;
+	    while(cursor.next()){
+		degree++;
+	    }
+	    offsets[v + 1] = offsets[v] + degree;
+	}
+	int m = offsets[n];
+	int[] targets = new int[m];
+	float[] weights = new float[m];
+	for(int v = 0; v < n; v++){
+	    cursor.reset(v);
+	    int slot = offsets[v];
+	    while(cursor.next()){
+		targets[slot] = cursor.neighbor();
+		weights[slot] = cursor.weight();
+		slot++;
+	    }
+	}
+	//the graph is symmetric, so the incoming slices are the outgoing ones and each incoming slot's edge is the
+	//reverse slot, found by walking every vertex's neighbors in order
+	int[] reverse = new int[m];
+	int[] next = new int[n];
+	for(int v = 0; v < n; v++){
+	    next[v] = offsets[v];
+	}
+	for(int v = 0; v < n; v++){
+	    for(int slot = offsets[v]; slot < offsets[v + 1]; slot++){
+		int w = targets[slot];
+		//v comes up in w's list in ascending order of v, so next[w] walks w's list in step
+		reverse[next[w]] = slot;
+		next[w]++;
+	    }
+	}
+	Object[] data = new Object[n];
+	long[] ids = new long[n];
+	for(int v = 0; v < n; v++){
+	    data[v] = snapshot.getData(v);
+	    ids[v] = snapshot.idOf(v);
+	}
+	return new GraphSnapshot<T>(ids, data, offsets, targets, weights, null, offsets.clone(), targets.clone(),
+				    weights.clone(), reverse);
+    }
+
+    /**
+     * toGraph materialises the view as a new graph with new vertices, holding one edge each way for every
+     * neighboring pair and one edge for every self loop
+     * @return undirected graph
+     */
+    @SuppressWarnings("unchecked")
+    public Graph<T> toGraph(){
+	int n = snapshot.size();
+	Graph<T> undirected = new Graph<T>();
+	Vertex<T>[] vertices = new Vertex[n];
+	for(int v = 0; v < n; v++){
+	    vertices[v] = new Vertex<T>(snapshot.getData(v), snapshot.idOf(v));
+	    undirected.addVertex(vertices[v].getId(), vertices[v]);
+	}
+	Cursor cursor = new Cursor();
+	for(int v = 0; v < n; v++){
+	    cursor.reset(v);
+	    while(cursor.next()){
+		undirected.addEdge(new Edge<T>(vertices[v], vertices[cursor.neighbor()], cursor.weight()));
+	    }
+	}
+	return undirected;
+    }
+
+}
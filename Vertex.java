@@ -8,10 +8,21 @@ import java.lang.Comparable;
 
 public class Vertex<T> implements Comparable<Vertex<T>>{
 
+    //number of edges in a list before it gets an index
+    public static final int INDEX_THRESHOLD = 32;
+
     protected T data;
     protected long id;
     protected ArrayList<Edge<T>> incoming;
     protected ArrayList<Edge<T>> outgoing;
+    //indexes of incoming edges by source id and outgoing edges by sink id, null until the list passes INDEX_THRESHOLD
+    protected EdgeIndex<T> incomingIndex;
+    protected EdgeIndex<T> outgoingIndex;
+    //bumped whenever an edge is added to or removed from incoming or outgoing, so cached copies can be checked
+    protected int inVersion;
+    protected int outVersion;
+    //graph the vertex was added to, told about every change so its cached snapshot is rebuilt, null if none
+    protected Graph<T> owner;
     //the incoming edge from the predecessor of the vertex
     protected Edge<T> predecessor;
     //cost for use in shortest path
@@ -54,6 +65,7 @@ public class Vertex<T> implements Comparable<Vertex<T>>{
      */
     public void setData(T newData){
 	data = newData;
+	changed();
     }
 
     /**
@@ -62,14 +74,30 @@ public class Vertex<T> implements Comparable<Vertex<T>>{
      */
     public void addIncoming(Edge<T> edge){
 	incoming.add(edge);
+	inVersion++;
+	changed();
+	if(incomingIndex != null){
+	    incomingIndex.added(incoming.size() - 1);
+	}
+	else if(incoming.size() > INDEX_THRESHOLD){
+	    incomingIndex = new EdgeIndex<T>(incoming, false);
+	}
     }
 
     /**
-     * removeIncoming removes a given incoming edge
+     * removeIncoming removes a given incoming edge. Once the vertex has an incoming index this takes constant time
+     * but moves the last incoming edge into the removed edge's place
      * @param edge to be removed
      */
     public void removeIncoming(Edge<T> edge){
-	incoming.remove(edge);
+	inVersion++;
+	changed();
+	if(incomingIndex != null){
+	    incomingIndex.remove(edge);
+	}
+	else{
+	    incoming.remove(edge);
+	}
     }
 
     /**
@@ -78,17 +106,98 @@ public class Vertex<T> implements Comparable<Vertex<T>>{
      */
     public void addOutgoing(Edge<T> edge){
 	outgoing.add(edge);
+	outVersion++;
+	changed();
+	if(outgoingIndex != null){
+	    outgoingIndex.added(outgoing.size() - 1);
+	}
+	else if(outgoing.size() > INDEX_THRESHOLD){
+	    outgoingIndex = new EdgeIndex<T>(outgoing, true);
+	}
     }
+
     /**
-     * removeOutgoing removes a given outgoing edge
+     * removeOutgoing removes a given outgoing edge. Once the vertex has an outgoing index this takes constant time
+     * but moves the last outgoing edge into the removed edge's place
      * @param edge to be removed
      */
     public void removeOutgoing(Edge<T> edge){
-	outgoing.remove(edge);
+	outVersion++;
+	changed();
+	if(outgoingIndex != null){
+	    outgoingIndex.remove(edge);
+	}
+	else{
+	    outgoing.remove(edge);
+	}
+    }
+
+    /**
+     * changed bumps the modification count of the graph the vertex belongs to, so snapshots and cached results made
+     * before the change are not handed out again
+     */
+    protected void changed(){
+	if(owner != null){
+	    owner.modCount++;
+	}
     }
 
     /**
-     * getIncoming returns a list of all the incoming edges to a vertex
+     * getOutgoingTo returns the outgoing edge to a given vertex, looked up in the outgoing index when the vertex has
+     * one
+     * @param sinkId id of the sink
+     * @return the first such edge, or null if there is none
+     */
+    public Edge<T> getOutgoingTo(long sinkId){
+	if(outgoingIndex != null){
+	    int slot = outgoingIndex.find(sinkId);
+	    return slot < 0 ? null : outgoing.get(slot);
+	}
+	for(Edge<T> edge : outgoing){
+	    if(edge.getSink().getId() == sinkId){
+		return edge;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * hasOutgoingTo returns whether there is an edge from this vertex to a given vertex
+     * @param sinkId id of the sink
+     * @return true if there is such an edge
+     */
+    public boolean hasOutgoingTo(long sinkId){
+	return getOutgoingTo(sinkId) != null;
+    }
+
+    /**
+     * incrementWeightTo adds one to the weight of every outgoing edge to a given vertex. With an outgoing index and
+     * no parallel edges this is a single lookup
+     * @param sinkId id of the sink
+     * @return true if there was such an edge
+     */
+    public boolean incrementWeightTo(long sinkId){
+	if(outgoingIndex != null && !outgoingIndex.hasDuplicates()){
+	    int slot = outgoingIndex.find(sinkId);
+	    if(slot < 0){
+		return false;
+	    }
+	    outgoing.get(slot).incrementWeight();
+	    return true;
+	}
+	boolean found = false;
+	for(Edge<T> edge : outgoing){
+	    if(edge.getSink().getId() == sinkId){
+		edge.incrementWeight();
+		found = true;
+	    }
+	}
+	return found;
+    }
+
+    /**
+     * getIncoming returns a list of all the incoming edges to a vertex. The list should only be changed through
+     * addIncoming and removeIncoming so the index stays right
      * @return incoming
      */
     public ArrayList<Edge<T>> getIncoming(){
@@ -96,13 +205,27 @@ public class Vertex<T> implements Comparable<Vertex<T>>{
     }
 
     /**
-     * getOutgoing returns a list of all the outgoing edges to a vertex
+     * getOutgoing returns a list of all the outgoing edges to a vertex. The list should only be changed through
+     * addOutgoing and removeOutgoing so the index stays right
      * @return outgoing
      */
     public ArrayList<Edge<T>> getOutgoing(){
 	return outgoing;
     }
 
+    /**
+     * getInVersion and getOutVersion return counters that change every time an edge is added to or removed from the
+     * incoming or outgoing list. Weight changes do not count
+     * @return version
+     */
+    public int getInVersion(){
+	return inVersion;
+    }
+
+    public int getOutVersion(){
+	return outVersion;
+    }
+
     /**
      * getNeighbors returns an arrayList of all the verticies that can be
      * reached from the current vertex
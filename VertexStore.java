@@ -0,0 +1,178 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The VertexStore class maps long ids to the vertices of a graph without boxing. The vertices and their ids are
+ * kept in two dense arrays in insertion order, and a LongIntHashMap maps each id to its position there. Looking up
+ * an id is one probe of primitive arrays, growing the store copies two arrays and rehashes longs, and the ids and
+ * vertices can be walked by position with nothing allocated. Removing a vertex moves the last one into its place.
+ *
+ * Unlike the Hashtable it replaces, the store is not synchronized
+ */
+
+public class VertexStore<T>{
+
+    protected long[] ids;
+    protected Vertex<T>[] vertices;
+    protected int size;
+    //position of every id in ids and vertices
+    protected final LongIntHashMap positions;
+    //bumped by every put of a new id and every remove, so iterators can tell the store changed under them
+    protected int modCount;
+
+    /**
+     * the VertexStore constructor makes an empty store
+     */
+    public VertexStore(){
+	this(16);
+    }
+
+    /**
+     * the VertexStore constructor makes an empty store with room for a given number of vertices
+     * @param expected number of vertices
+     */
+    @SuppressWarnings("unchecked")
+    public VertexStore(int expected){
+	int capacity = Math.max(expected, 4);
+	ids = new long[capacity];
+	vertices = new Vertex[capacity];
+	size = 0;
+	positions = new LongIntHashMap(capacity);
+    }
+
+    /**
+     * size returns the number of vertices in the store
+     * @return size
+     */
+    public int size(){
+	return size;
+    }
+
+    /**
+     * get returns the vertex with a given id
+     * @param id
+     * @return vertex or null if there is none
+     */
+    public Vertex<T> get(long id){
+	int position = positions.get(id, -1);
+	return position < 0 ? null : vertices[position];
+    }
+
+    /**
+     * containsKey returns whether there is a vertex with a given id
+     * @param id
+     * @return true if the id is in the store
+     */
+    public boolean containsKey(long id){
+	return positions.containsKey(id);
+    }
+
+    /**
+     * put stores a vertex under an id. A vertex already stored under the id is replaced in place
+     * @param id
+     * @param vertex to store, not null
+     * @return the vertex that was replaced, or null
+     */
+    public Vertex<T> put(long id, Vertex<T> vertex){
+	if(vertex == null){
+	    throw new NullPointerException();
+	}
+	int position = positions.putIfAbsent(id, size);
+	if(position != size){
+	    Vertex<T> old = vertices[position];
+	    vertices[position] = vertex;
+	    return old;
+	}
+	if(size == ids.length){
+	    ids = Arrays.copyOf(ids, size * 2);
+	    vertices = Arrays.copyOf(vertices, size * 2);
+	}
+	ids[size] = id;
+	vertices[size] = vertex;
+	size++;
+	modCount++;
+	return null;
+    }
+
+    /**
+     * remove takes the vertex with a given id out of the store, moving the last vertex into its position
+     * @param id
+     * @return the vertex that was removed, or null if there was none
+     */
+    public Vertex<T> remove(long id){
+	int position = positions.remove(id, -1);
+	if(position < 0){
+	    return null;
+	}
+	Vertex<T> removed = vertices[position];
+	size--;
+	if(position != size){
+	    ids[position] = ids[size];
+	    vertices[position] = vertices[size];
+	    positions.put(ids[position], position);
+	}
+	vertices[size] = null;
+	modCount++;
+	return removed;
+    }
+
+    /**
+     * idAt and vertexAt return the id and vertex at a position, so the store can be walked from 0 to size() - 1
+     * without an iterator. Positions change when a vertex is removed
+     * @param position
+     * @return id or vertex
+     */
+    public long idAt(int position){
+	return ids[position];
+    }
+
+    public Vertex<T> vertexAt(int position){
+	return vertices[position];
+    }
+
+    /**
+     * ids returns a copy of every id in the store
+     * @return array of ids in position order
+     */
+    public long[] ids(){
+	return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * values returns a view of the vertices in the store in position order. The view cannot be changed
+     * @return collection of vertices
+     */
+    public Collection<Vertex<T>> values(){
+	return new AbstractCollection<Vertex<T>>(){
+	    public int size(){
+		return size;
+	    }
+
+	    public Iterator<Vertex<T>> iterator(){
+		return new Iterator<Vertex<T>>(){
+		    int next = 0;
+		    final int expected = modCount;
+
+		    public boolean hasNext(){
+			return next < size;
+		    }
+
+		    public Vertex<T> next(){
+			if(modCount != expected){
+			    throw new ConcurrentModificationException();
+			}
+			if(next >= size){
+			    throw new NoSuchElementException();
+			}
+			return vertices[next++];
+		    }
+		};
+	    }
+	};
+    }
+
+}